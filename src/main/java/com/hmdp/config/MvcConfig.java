@@ -1,15 +1,22 @@
 package com.hmdp.config;
 
 import com.hmdp.service.impl.UserServiceImpl;
+import com.hmdp.utils.AdminInterceptor;
 import com.hmdp.utils.LoginInterceptor;
+import com.hmdp.utils.LoginSessionCache;
+import com.hmdp.utils.RateLimitInterceptor;
 import com.hmdp.utils.RefreshTokenInterceptor;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.hmdp.utils.SignedTokenService;
+import com.hmdp.utils.TokenTtlRefresher;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.HashSet;
 
 
 @Configuration
@@ -18,6 +25,21 @@ public class MvcConfig implements WebMvcConfigurer {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private LoginSessionCache loginSessionCache;
+
+    @Resource
+    private TokenTtlRefresher tokenTtlRefresher;
+
+    @Resource
+    private SignedTokenService signedTokenService;
+
+    @Value("${hmdp.rate-limit.trusted-proxies:}")
+    private String[] trustedProxies;
+
+    @Value("${hmdp.admin.user-ids:}")
+    private Long[] adminIds;
+
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
         // 登录拦截器（利用order来控制后执行）
@@ -31,7 +53,11 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/user/code",
                         "/user/login"
                 ).order(1);
+        // 管理员拦截器（与登录拦截器order相同，按注册顺序在登录校验之后执行）
+        registry.addInterceptor(new AdminInterceptor(new HashSet<>(Arrays.asList(adminIds)))).addPathPatterns("/**").order(1);
+        // 限流拦截器（在登录校验之后执行，以便按用户限流）
+        registry.addInterceptor(new RateLimitInterceptor(stringRedisTemplate, new HashSet<>(Arrays.asList(trustedProxies)))).addPathPatterns("/**").order(2);
         // token刷新拦截器（利用order来控制优先执行）
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).addPathPatterns("/**").order(0);
+        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate, loginSessionCache, tokenTtlRefresher, signedTokenService)).addPathPatterns("/**").order(0);
     }
 }
@@ -2,15 +2,25 @@ package com.hmdp.config;
 
 import com.baomidou.mybatisplus.annotation.DbType;
 import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import com.baomidou.mybatisplus.extension.plugins.handler.TableNameHandler;
+import com.baomidou.mybatisplus.extension.plugins.inner.DynamicTableNameInnerInterceptor;
 import com.baomidou.mybatisplus.extension.plugins.inner.PaginationInnerInterceptor;
+import com.hmdp.utils.VoucherOrderShardHolder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.HashMap;
+import java.util.Map;
+
 @Configuration
 public class MybatisConfig {
     @Bean
     public MybatisPlusInterceptor mybatisPlusInterceptor() {
         MybatisPlusInterceptor interceptor = new MybatisPlusInterceptor();
+        // 动态表名需要在分页之前，分页的count语句才会使用分表
+        Map<String, TableNameHandler> tableNameHandlerMap = new HashMap<>();
+        tableNameHandlerMap.put("tb_voucher_order", (sql, tableName) -> VoucherOrderShardHolder.tableName(tableName));
+        interceptor.addInnerInterceptor(new DynamicTableNameInnerInterceptor(tableNameHandlerMap));
         interceptor.addInnerInterceptor(new PaginationInnerInterceptor(DbType.MYSQL));
         return interceptor;
     }
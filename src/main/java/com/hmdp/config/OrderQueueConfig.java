@@ -0,0 +1,31 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.OrderQueue;
+import com.hmdp.utils.RedisStreamOrderQueue;
+import com.hmdp.utils.RingBufferOrderQueue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+@Configuration
+public class OrderQueueConfig {
+
+    // 默认使用 Redis Stream，支持多实例部署
+    @Bean
+    @ConditionalOnProperty(name = "hmdp.order-queue.type", havingValue = "stream", matchIfMissing = true)
+    public OrderQueue redisStreamOrderQueue(StringRedisTemplate stringRedisTemplate){
+        return new RedisStreamOrderQueue(stringRedisTemplate);
+    }
+
+    // 单实例部署或压测时使用内存环形队列
+    @Bean
+    @ConditionalOnProperty(name = "hmdp.order-queue.type", havingValue = "ring-buffer")
+    public OrderQueue ringBufferOrderQueue(
+            @Value("${hmdp.order-queue.ring-buffer.wal-dir:./data/order-wal}") String walDir,
+            @Value("${hmdp.order-queue.ring-buffer.capacity:65536}") int capacity,
+            @Value("${hmdp.order-queue.ring-buffer.sync-on-offer:true}") boolean syncOnOffer){
+        return new RingBufferOrderQueue(walDir, capacity, syncOnOffer);
+    }
+}
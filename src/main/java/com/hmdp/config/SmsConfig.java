@@ -0,0 +1,18 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.LogSmsSender;
+import com.hmdp.utils.SmsSender;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class SmsConfig {
+
+    // 默认以日志代替短信发送，接入短信服务商时新增对应的 SmsSender
+    @Bean
+    @ConditionalOnProperty(name = "hmdp.sms.sender", havingValue = "log", matchIfMissing = true)
+    public SmsSender logSmsSender(){
+        return new LogSmsSender();
+    }
+}
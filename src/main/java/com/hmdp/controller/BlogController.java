@@ -68,6 +68,13 @@ public class BlogController {
         return blogService.queryBlogLikes(id);
     }
 
+    @GetMapping("/likes/{id}/scroll")
+    public Result scrollBlogLikes(@PathVariable("id") Long id,
+                                  @RequestParam(value = "cursor", required = false) String cursor,
+                                  @RequestParam(value = "size", required = false) Integer size) {
+        return blogService.scrollBlogLikes(id, cursor, size);
+    }
+
     // BlogController
     @GetMapping("/of/user")
     public Result queryBlogByUserId(
@@ -82,8 +89,9 @@ public class BlogController {
     }
 
     @GetMapping("/of/follow")
-    public Result queryBlogOfFollow(@RequestParam("lastId")Long max,@RequestParam(value="offset",defaultValue = "0")Integer offset){
-            return blogService.queryBlogOfFollow(max,offset);
+    public Result queryBlogOfFollow(@RequestParam(value = "cursor", required = false) String cursor,
+                                    @RequestParam(value = "size", required = false) Integer size){
+            return blogService.queryBlogOfFollow(cursor, size);
     }
 
 }
@@ -0,0 +1,41 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.AdminOnly;
+import com.hmdp.utils.LockMetrics;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ *  运行指标，包含锁名等内部信息，仅限管理员
+ * </p>
+ */
+@AdminOnly
+@RestController
+@RequestMapping("/metrics")
+public class MetricsController {
+
+    @Resource
+    private LockMetrics lockMetrics;
+
+    /**
+     * 查询分布式锁的统计
+     * @param top 返回竞争最激烈的锁的数量
+     * @return 各锁名模式的获取耗时、失败率、持有时间，以及竞争最激烈的锁
+     */
+    @GetMapping("lock")
+    public Result queryLockMetrics(@RequestParam(value = "top", defaultValue = "20") Integer top) {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("locks", lockMetrics.snapshot());
+        metrics.put("topContended", lockMetrics.topContended(top));
+        return Result.ok(metrics);
+    }
+}
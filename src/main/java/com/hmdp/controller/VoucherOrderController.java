@@ -3,9 +3,13 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.AdminOnly;
+import com.hmdp.utils.RateLimit;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
@@ -25,10 +29,45 @@ public class VoucherOrderController {
     @Resource
     private IVoucherOrderService voucherOrderService;
 
+    @RateLimit(type = RateLimit.LimitType.USER, capacity = 5, rate = 1)
     @PostMapping("seckill/{id}")
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
 
         return voucherOrderService.seckillVoucher(voucherId);
 
     }
+
+    /**
+     * 查询秒杀排队凭证的状态
+     * @param ticketId 排队凭证id
+     * @return 凭证状态，抢购成功时包含订单id
+     */
+    @GetMapping("ticket/{ticketId}")
+    public Result queryTicket(@PathVariable("ticketId") String ticketId) {
+        return voucherOrderService.queryTicket(ticketId);
+    }
+
+    /**
+     * 查询当前用户的订单
+     * @return 订单列表
+     */
+    @GetMapping("of/me")
+    public Result queryMyOrders() {
+        return voucherOrderService.queryMyOrders();
+    }
+
+    /**
+     * 分页查询优惠券的订单，仅限管理员，需要查询全部分表
+     * @param voucherId 优惠券id
+     * @param cursor 上一页返回的游标，第一页不传
+     * @param size 每页数量
+     * @return 按订单id倒序的一页订单和下一页的游标
+     */
+    @AdminOnly
+    @GetMapping("of/voucher/{id}")
+    public Result queryOrdersOfVoucher(@PathVariable("id") Long voucherId,
+                                       @RequestParam(value = "cursor", required = false) String cursor,
+                                       @RequestParam(value = "size", required = false) Integer size) {
+        return voucherOrderService.queryOrdersOfVoucher(voucherId, cursor, size);
+    }
 }
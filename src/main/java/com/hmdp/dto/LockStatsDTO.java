@@ -0,0 +1,42 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+public class LockStatsDTO {
+    /**
+     * 锁名模式，如 lock:shop:*
+     */
+    private String name;
+    /**
+     * 获取锁的次数
+     */
+    private Long attempts;
+    /**
+     * 获取锁失败的次数
+     */
+    private Long failures;
+    /**
+     * 失败率
+     */
+    private Double failureRate;
+    /**
+     * 获取锁的耗时（毫秒）：平均、P99、最大
+     */
+    private Double acquireAvgMillis;
+    private Long acquireP99Millis;
+    private Long acquireMaxMillis;
+    /**
+     * 持有锁的时间（毫秒）：平均、P99、最大
+     */
+    private Double holdAvgMillis;
+    private Long holdP99Millis;
+    private Long holdMaxMillis;
+    /**
+     * 直方图，key为桶的上界（毫秒），value为落入该桶的次数
+     */
+    private Map<String, Long> acquireHistogram;
+    private Map<String, Long> holdHistogram;
+}
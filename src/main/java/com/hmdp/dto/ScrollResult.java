@@ -7,6 +7,8 @@ import java.util.List;
 @Data
 public class ScrollResult {
     private List<?> list;
-    private Long minTime;
-    private Integer offset;
+    /**
+     * 下一页的游标，没有更多数据时为null
+     */
+    private String cursor;
 }
@@ -0,0 +1,31 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+@Data
+public class SeckillTicketDTO {
+    /**
+     * 排队凭证id
+     */
+    private String ticketId;
+    /**
+     * 秒杀的优惠券id
+     */
+    private Long voucherId;
+    /**
+     * 凭证状态，0：排队中；1：抢购成功；2：抢购失败
+     */
+    private Integer status;
+    /**
+     * 前面还有多少人在排队，仅排队中有效
+     */
+    private Long position;
+    /**
+     * 抢购成功后的订单id
+     */
+    private Long orderId;
+    /**
+     * 抢购失败的原因
+     */
+    private String errorMsg;
+}
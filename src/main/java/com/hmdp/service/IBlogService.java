@@ -22,7 +22,9 @@ public interface IBlogService extends IService<Blog> {
 
     Result queryBlogLikes(Long id);
 
+    Result scrollBlogLikes(Long id, String cursor, Integer size);
+
     Result saveBlog(Blog blog);
 
-    Result queryBlogOfFollow(Long max, Integer offset);
+    Result queryBlogOfFollow(String cursor, Integer size);
 }
@@ -21,6 +21,8 @@ public interface IUserService extends IService<User> {
 
     Result login(LoginFormDTO loginForm, HttpSession session);
 
+    Result logout(String token);
+
     Result sign();
 
     Result signCount();
@@ -16,5 +16,11 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     Result seckillVoucher(Long voucherId);
 
+    Result queryTicket(String ticketId);
+
+    Result queryMyOrders();
+
+    Result queryOrdersOfVoucher(Long voucherId, String cursor, Integer size);
+
     void createVoucherOrder(VoucherOrder voucherOrder);
 }
@@ -1,10 +1,23 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.ScrollResult;
 import com.hmdp.entity.BlogComments;
 import com.hmdp.mapper.BlogCommentsMapper;
 import com.hmdp.service.IBlogCommentsService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IBlogService;
+import com.hmdp.utils.BlogHotBoard;
+import com.hmdp.utils.ScrollCursor;
+import com.hmdp.utils.UserHolder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * <p>
@@ -17,4 +30,71 @@ import org.springframework.stereotype.Service;
 @Service
 public class BlogCommentsServiceImpl extends ServiceImpl<BlogCommentsMapper, BlogComments> implements IBlogCommentsService {
 
+    @Resource
+    private IBlogService blogService;
+
+    @Resource
+    private BlogHotBoard blogHotBoard;
+
+    @Value("${hmdp.scroll.page-size:10}")
+    private int scrollPageSize;
+
+    @Override
+    @Transactional
+    public Result saveComment(BlogComments comment) {
+        if(comment.getBlogId() == null || StrUtil.isBlank(comment.getContent())){
+            return Result.fail("评论内容不能为空!");
+        }
+        // 1、评论数 + 1，同时校验笔记是否存在
+        boolean isSuccess = blogService.update()
+                .setSql("comments = IFNULL(comments, 0) + 1")
+                .eq("id", comment.getBlogId())
+                .update();
+        if(!isSuccess){
+            return Result.fail("笔记不存在!");
+        }
+        // 2、保存评论
+        comment.setId(null);
+        comment.setUserId(UserHolder.getUser().getId());
+        comment.setParentId(comment.getParentId() == null ? 0L : comment.getParentId());
+        comment.setAnswerId(comment.getAnswerId() == null ? 0L : comment.getAnswerId());
+        comment.setLiked(0);
+        comment.setStatus(false);
+        comment.setCreateTime(LocalDateTime.now().withNano(0));
+        save(comment);
+        // 3、增加笔记的热度
+        blogHotBoard.onComment(comment.getBlogId());
+        return Result.ok(comment.getId());
+    }
+
+    @Override
+    public Result queryBlogComments(Long blogId, String cursor, Integer size) {
+        ScrollCursor from;
+        try {
+            from = ScrollCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标!");
+        }
+        int count = ScrollCursor.pageSize(size, scrollPageSize);
+        // 1、按创建时间倒序查询游标之后的评论
+        // select * from tb_blog_comments where blog_id = ? and (create_time < ? or (create_time = ? and id < ?))
+        // order by create_time desc, id desc limit count
+        List<BlogComments> comments = query()
+                .eq("blog_id", blogId)
+                .and(from != null, w -> {
+                    LocalDateTime time = ScrollCursor.toTime(from.getScore());
+                    w.lt("create_time", time).or(o -> o.eq("create_time", time).lt("id", from.getId()));
+                })
+                .orderByDesc("create_time", "id")
+                .last("LIMIT " + count)
+                .list();
+        // 2、封装并返回
+        ScrollResult r = new ScrollResult();
+        r.setList(comments);
+        if(comments.size() == count){
+            BlogComments last = comments.get(comments.size() - 1);
+            r.setCursor(ScrollCursor.of(ScrollCursor.toScore(last.getCreateTime()), last.getId()).encode());
+        }
+        return Result.ok(r);
+    }
 }
@@ -1,36 +1,53 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
-import com.hmdp.entity.Follow;
-import com.hmdp.entity.User;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BeanConverters;
+import com.hmdp.utils.BlogHotBoard;
+import com.hmdp.utils.BlogHydrator;
+import com.hmdp.utils.FeedFanoutWorker;
+import com.hmdp.utils.FeedInbox;
+import com.hmdp.utils.ScrollCursor;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.baomidou.mybatisplus.core.toolkit.IdWorker.getId;
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_EPOCH_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
 import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
-import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_COUNT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_DIRTY_KEY;
 
 /**
  * <p>
@@ -40,9 +57,34 @@ import static com.hmdp.utils.RedisConstants.FEED_KEY;
  * @author xiaopangshu6
  * @since 2023-12-22
  */
+@Slf4j
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
 
+    private static final DefaultRedisScript<Long> LIKE_TOGGLE_SCRIPT;
+    static{
+        LIKE_TOGGLE_SCRIPT=new DefaultRedisScript<>();
+        // 设置lua脚本地址为like_toggle.lua
+        LIKE_TOGGLE_SCRIPT.setLocation(new ClassPathResource("like_toggle.lua"));
+        // 设置返回值类型为Long
+        LIKE_TOGGLE_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final DefaultRedisScript<Long> LIKE_FLUSH_ACK_SCRIPT;
+    static{
+        LIKE_FLUSH_ACK_SCRIPT=new DefaultRedisScript<>();
+        LIKE_FLUSH_ACK_SCRIPT.setLocation(new ClassPathResource("like_flush_ack.lua"));
+        LIKE_FLUSH_ACK_SCRIPT.setResultType(Long.class);
+    }
+
+    // 点赞数写回数据库的间隔
+    private static final long LIKE_FLUSH_INTERVAL_SECONDS = 5;
+    // 每批写回的笔记数
+    private static final int LIKE_FLUSH_BATCH_SIZE = 500;
+
+    // 线程池
+    private static final ScheduledExecutorService LIKE_FLUSH_EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+
     @Resource
     private IUserService userService;
 
@@ -50,20 +92,39 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     private StringRedisTemplate stringRedisTemplate;
 
     @Resource
-    private IFollowService followService;
+    private FeedFanoutWorker feedFanoutWorker;
+
+    @Resource
+    private FeedInbox feedInbox;
+
+    @Resource
+    private BlogHydrator blogHydrator;
+
+    @Resource
+    private BlogHotBoard blogHotBoard;
+
+    @Value("${hmdp.scroll.page-size:10}")
+    private int scrollPageSize;
+
+    @PostConstruct
+    private void init(){
+        LIKE_FLUSH_EXECUTOR.scheduleWithFixedDelay(this::flushLikeCounts,
+                LIKE_FLUSH_INTERVAL_SECONDS, LIKE_FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy(){
+        LIKE_FLUSH_EXECUTOR.shutdown();
+        // 退出前写回剩余的点赞数
+        flushLikeCounts();
+    }
+
     @Override
     public Result queryHotBlog(Integer current) {
-        // 根据用户查询
-        Page<Blog> page = query()
-                .orderByDesc("liked")
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 获取当前页数据
-        List<Blog> records = page.getRecords();
-        // 查询用户
-        records.forEach(blog -> {
-            this.queryBlogUser(blog);
-            this.isBlogLiked(blog);
-        });
+        // 从本地的热门笔记快照中分页
+        List<Blog> records = blogHotBoard.page(current, SystemConstants.MAX_PAGE_SIZE);
+        // 查询用户和是否被点赞
+        blogHydrator.hydrate(records);
         return Result.ok(records);
     }
 
@@ -74,54 +135,75 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if(blog==null){
             return Result.fail("笔记不存在!");
         }
-        // 2、查询blog有关的用户
-        queryBlogUser(blog);
-        // 3、查询blog是否被点赞
-        isBlogLiked(blog);
+        // 2、查询blog有关的用户和是否被点赞
+        blogHydrator.hydrate(blog);
         return Result.ok(blog);
     }
 
-    private void isBlogLiked(Blog blog) {
-        // 1、获取登录用户
-        UserDTO user = UserHolder.getUser();
-        if(user ==null){
-            // 用户未登录，无需查询是否点赞
-            return;
-        }
-        Long userId = user.getId();
-        // 2、判断当前登录用户是否已经点赞
-        String key="blog:liked:" + blog.getId();
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-        blog.setIsLike(score !=null);
-    }
-
     @Override
     public Result likeBlog(Long id) {
         // 1、获取登录用户
         Long userId = UserHolder.getUser().getId();
-        // 2、判断当前登录用户是否已经点赞
-        String key=BLOG_LIKED_KEY + id;
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-        if(score==null){
-            // 3、如果未点赞，可以点赞
-            // 3.1、数据库点赞数 + 1
-            boolean isSuccess = update().setSql("liked=liked+1").eq("id", id).update();
-            // 3.2、保存用户到Redis的set集合
-            if(isSuccess){
-                stringRedisTemplate.opsForZSet().add(key,userId.toString(),System.currentTimeMillis());
-            }
-        }else{
-            // 4、如果已点赞，取消点赞
-            // 4.1、数据库点赞数 -1
-            boolean isSuccess = update().setSql("liked=liked-1").eq("id", id).update();
-            // 4.2、把用户从Redis的set集合移除
-            if(isSuccess){
-                stringRedisTemplate.opsForZSet().remove(key,userId.toString());
+        // 2、执行lua脚本，点赞或取消点赞，并更新点赞数和热度
+        Long result = toggleLike(id, userId, "");
+        if(result != null && result == -1){
+            // 2.1、Redis中没有点赞数，以数据库中的点赞数初始化后重新执行 select id, liked from tb_blog where id = ?
+            Blog blog = query().select("id", "liked").eq("id", id).one();
+            if(blog == null){
+                return Result.fail("笔记不存在!");
             }
+            toggleLike(id, userId, String.valueOf(blog.getLiked() == null ? 0 : blog.getLiked()));
         }
+        // 3、点赞数由后台任务定时写回数据库
         return Result.ok();
     }
 
+    private Long toggleLike(Long id, Long userId, String seed) {
+        return stringRedisTemplate.execute(
+                LIKE_TOGGLE_SCRIPT,
+                Arrays.asList(BLOG_LIKED_KEY + id, BLOG_LIKE_COUNT_KEY, BLOG_LIKE_DIRTY_KEY, BLOG_HOT_KEY, BLOG_HOT_EPOCH_KEY),
+                userId.toString(), id.toString(), String.valueOf(System.currentTimeMillis()),
+                String.valueOf(BlogHotBoard.HALF_LIFE_MILLIS), String.valueOf(SystemConstants.BLOG_HOT_LIKE_WEIGHT), seed
+        );
+    }
+
+    // 把点赞数有变化的笔记批量写回数据库，写入的是Redis中的点赞数而不是增量，重复写入没有影响
+    // 写入成功后才从待写回集合中移除，写回期间又有点赞的笔记留在集合中，进程崩溃也不会丢失
+    private void flushLikeCounts() {
+        try {
+            // 1、本轮最多处理的批数，避免持续有新点赞时一直循环
+            Long pending = stringRedisTemplate.opsForSet().size(BLOG_LIKE_DIRTY_KEY);
+            long batches = pending == null ? 0 : (pending + LIKE_FLUSH_BATCH_SIZE - 1) / LIKE_FLUSH_BATCH_SIZE;
+            for (long b = 0; b < batches && !Thread.currentThread().isInterrupted(); b++) {
+                // 2、读取一批待写回的笔记，不移除 SRANDMEMBER blog:like:dirty 500
+                Set<String> members = stringRedisTemplate.opsForSet().distinctRandomMembers(BLOG_LIKE_DIRTY_KEY, LIKE_FLUSH_BATCH_SIZE);
+                if(members == null || members.isEmpty()){
+                    return;
+                }
+                List<String> ids = new ArrayList<>(members);
+                // 3、查询点赞数 HMGET blog:like:count id1 id2 ...
+                List<Object> counts = stringRedisTemplate.opsForHash().multiGet(BLOG_LIKE_COUNT_KEY, new ArrayList<>(ids));
+                List<Blog> blogs = new ArrayList<>(ids.size());
+                String[] acks = new String[ids.size() * 2];
+                for (int i = 0; i < ids.size(); i++) {
+                    Object count = counts.get(i);
+                    if(count != null){
+                        blogs.add(new Blog().setId(Long.valueOf(ids.get(i))).setLiked(Integer.valueOf((String) count)));
+                    }
+                    acks[2 * i] = ids.get(i);
+                    acks[2 * i + 1] = count == null ? "" : (String) count;
+                }
+                // 4、批量更新 update tb_blog set liked = ? where id = ?，失败时抛出，笔记留在集合中下次重试
+                updateBatchById(blogs, LIKE_FLUSH_BATCH_SIZE);
+                // 5、移除写回后点赞数没有变化的笔记
+                stringRedisTemplate.execute(LIKE_FLUSH_ACK_SCRIPT,
+                        Arrays.asList(BLOG_LIKE_COUNT_KEY, BLOG_LIKE_DIRTY_KEY), (Object[]) acks);
+            }
+        } catch (Exception e) {
+            log.error("点赞数写回数据库异常", e);
+        }
+    }
+
     @Override
     public Result queryBlogLikes(Long id) {
         String key=BLOG_LIKED_KEY+id;
@@ -137,90 +219,98 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         List<UserDTO> userDTOS = userService.query()
                 .in("id",ids).last("ORDER BY FIELD(id,"+idStr+")").list()
                 .stream()
-                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
+                .map(BeanConverters::toUserDTO)
                 .collect(Collectors.toList());
         // 4、返回
         return Result.ok(userDTOS);
     }
 
+    @Override
+    public Result scrollBlogLikes(Long id, String cursor, Integer size) {
+        ScrollCursor from;
+        try {
+            from = ScrollCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标!");
+        }
+        int count = ScrollCursor.pageSize(size, scrollPageSize);
+        // 1、按点赞时间倒序查询游标之后的点赞用户
+        String key = BLOG_LIKED_KEY + id;
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            ScrollCursor.query((StringRedisConnection) connection, key, from, count);
+            return null;
+        });
+        List<ZSetOperations.TypedTuple<String>> page = ScrollCursor.collect(results, 0, from);
+        if(page.size() > count){
+            page = page.subList(0, count);
+        }
+        ScrollResult r = new ScrollResult();
+        r.setCursor(ScrollCursor.next(page, count));
+        if(page.isEmpty()){
+            r.setList(Collections.emptyList());
+            return Result.ok(r);
+        }
+        // 2、根据用户id查询用户 WHERE id IN(5,1) ORDER BY FIELD(id,5,1)
+        List<Long> ids = page.stream().map(tuple -> Long.valueOf(tuple.getValue())).collect(Collectors.toList());
+        String idStr = StrUtil.join(",", ids);
+        r.setList(userService.query()
+                .in("id",ids).last("ORDER BY FIELD(id,"+idStr+")").list()
+                .stream()
+                .map(BeanConverters::toUserDTO)
+                .collect(Collectors.toList()));
+        return Result.ok(r);
+    }
+
     @Override
     public Result saveBlog(Blog blog) {
         // 1、获取登录用户
         UserDTO user = UserHolder.getUser();
         blog.setUserId(user.getId());
+        // 创建时间同时作为关注流中的分数，数据库只保存到秒
+        blog.setCreateTime(LocalDateTime.now().withNano(0));
         // 2、保存探店笔记
         boolean isSuccess = save(blog);
         if(!isSuccess){
             return Result.fail("新增笔记失败!");
         }
-        // 3、查询笔记作者的所有粉丝 select * from tb_follow where follow_user_id = ?
-        List<Follow> follows = followService.query().eq("follow_user_id", user.getId()).list();
-        // 4、推送笔记id给所有粉丝
-        for(Follow follow: follows){
-            // 4.1、获取粉丝id
-            Long userId = follow.getUserId();
-            // 4.2、推送
-            String key=FEED_KEY+userId;
-            stringRedisTemplate.opsForZSet().add(key,blog.getId().toString(),System.currentTimeMillis());
-        }
-        // 5、返回id
+        // 3、由后台任务推送给粉丝，不在请求线程中执行
+        feedFanoutWorker.publish(user.getId(), blog.getId(), ScrollCursor.toScore(blog.getCreateTime()));
+        // 4、返回id
         return Result.ok(blog.getId());
     }
 
     @Override
-    public Result queryBlogOfFollow(Long max, Integer offset) {
+    public Result queryBlogOfFollow(String cursor, Integer size) {
         // 1、获取当前用户
         Long userId = UserHolder.getUser().getId();
-        // 2、查询收件箱 ZREVRANGEBYSCORE key Max Min LIMT offset count
-        String key=FEED_KEY+userId;
-        Set<ZSetOperations.TypedTuple<String>> typedTuples = stringRedisTemplate.opsForZSet()
-                .reverseRangeByScoreWithScores(key, 0, max, offset, 2);
+        ScrollCursor from;
+        try {
+            from = ScrollCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标!");
+        }
+        int count = ScrollCursor.pageSize(size, scrollPageSize);
+        // 2、查询收件箱和关注的大V的发件箱
+        List<ZSetOperations.TypedTuple<String>> typedTuples = feedInbox.read(userId, from, count);
         // 3、非空判断
-        if(typedTuples==null||typedTuples.isEmpty()){
+        if(typedTuples.isEmpty()){
             return Result.ok();
         }
-        // 4、解析数据：blogId、minTime（时间戳）、offset
-        List<Long> ids=new ArrayList<>(typedTuples.size());
-        long minTime=0;
-        int os=1;
-        for (ZSetOperations.TypedTuple<String> tuple : typedTuples) {
-            // 4.1、获取id
-            ids.add(Long.valueOf(tuple.getValue()));
-            // 4.2、获取分数（时间戳）
-            long time=tuple.getScore().longValue();
-            if(time==minTime){
-                os++;
-            }else{
-                minTime=time;
-                os=1;
-            }
-        }
+        // 4、解析出blogId
+        List<Long> ids = typedTuples.stream().map(tuple -> Long.valueOf(tuple.getValue())).collect(Collectors.toList());
         // 5、根据id查询blog
         String idStr = StrUtil.join(",", ids);
         List<Blog> blogs = query()
                 .in("id",ids).last("ORDER BY FIELD(id,"+idStr+")").list();
-
-        for (Blog blog : blogs) {
-            // 5.1、查询blog有关的用户
-            queryBlogUser(blog);
-            // 5.2、查询blog是否被点赞
-            isBlogLiked(blog);
-        }
+        // 5.1、批量查询blog有关的用户和是否被点赞
+        blogHydrator.hydrate(blogs);
 
         // 6、封装并返回
         ScrollResult r=new ScrollResult();
         r.setList(blogs);
-        r.setOffset(os);
-        r.setMinTime(minTime);
+        r.setCursor(ScrollCursor.next(typedTuples, count));
         return Result.ok(r);
     }
 
-    public void queryBlogUser(Blog blog){
-        Long userId = blog.getUserId();
-        User user = userService.getById(userId);
-        blog.setName(user.getNickName());
-        blog.setIcon(user.getIcon());
-    }
-
 
 }
@@ -1,6 +1,5 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
@@ -9,6 +8,8 @@ import com.hmdp.mapper.FollowMapper;
 import com.hmdp.service.IFollowService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BeanConverters;
+import com.hmdp.utils.FeedInbox;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -22,6 +23,8 @@ import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import static com.hmdp.utils.RedisConstants.FOLLOWS_KEY;
+
 /**
  * <p>
  *  服务实现类
@@ -39,12 +42,15 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
     @Resource
     private IUserService userService;
 
+    @Resource
+    private FeedInbox feedInbox;
+
     @Override
     public Result follow(Long followUserId, Boolean isFollow) {
         // 1、获取登录用户
         Long userId = UserHolder.getUser().getId();
 
-        String key="follows:"+userId;
+        String key=FOLLOWS_KEY+userId;
         // 1、判断到底是关注还是取关
         if(isFollow){
             // 2、关注，新增数据
@@ -56,6 +62,8 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
             if(isSuccess){
                 // 把关注用户的id，放入redis的set集合 sadd userId followerUserId
                 stringRedisTemplate.opsForSet().add(key,followUserId.toString());
+                // 把关注用户最近的笔记合并到收件箱
+                feedInbox.onFollow(userId, followUserId);
             }
         }else{
             // 3、取关，删除 delete from tb_follow where user_id = ? and follow_user_id = ?
@@ -63,6 +71,8 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
             if(isSuccess) {
                 // 把关注用户的id从Redis集合中排除
                 stringRedisTemplate.opsForSet().remove(key, followUserId.toString());
+                // 从收件箱删除取关用户的笔记
+                feedInbox.onUnfollow(userId, followUserId);
             }
         }
         return Result.ok();
@@ -82,10 +92,10 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
     public Result followCommons(Long id) {
         // 1、获取当前用户
         Long userId = UserHolder.getUser().getId();
-        String key="follow:"+userId;
+        String key=FOLLOWS_KEY+userId;
 
         // 2、求交集
-        String key2="follow:"+id;
+        String key2=FOLLOWS_KEY+id;
         Set<String> intersect = stringRedisTemplate.opsForSet().intersect(key, key2);
         if(intersect == null||intersect.isEmpty()){
             //无交集
@@ -96,7 +106,7 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
         // 4、查询用户
         List<UserDTO> users = userService.listByIds(ids)
                 .stream()
-                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
+                .map(BeanConverters::toUserDTO)
                 .collect(Collectors.toList());
 
         return Result.ok(users);
@@ -13,6 +13,7 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RedisData;
 import com.hmdp.utils.SystemConstants;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.geo.Distance;
 import org.springframework.data.geo.GeoResult;
 import org.springframework.data.geo.GeoResults;
@@ -49,6 +50,10 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     private CacheClient cacheClient;
 
+    // 店铺缓存击穿的解决方式：mutex（互斥锁）或 logical-expire（逻辑过期）
+    @Value("${hmdp.cache.shop-mode:mutex}")
+    private String shopCacheMode;
+
     @Override
     public Result queryById(Long id) {
 
@@ -59,13 +64,15 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 //                CACHE_SHOP_KEY, id, Shop.class, this::getById,
 //                CACHE_SHOP_TTL, TimeUnit.MINUTES);
 
-        // 互斥锁解决缓存击穿
-//        Shop shop = queryWithMutex(id);
-
-        // 逻辑过期解决缓存击穿
-        Shop shop = cacheClient.queryWithLogicalExpire(
-                CACHE_SHOP_KEY, id, Shop.class, this::getById,
-                CACHE_SHOP_TTL, TimeUnit.SECONDS);
+        // 互斥锁解决缓存击穿，未获取到锁的请求等待锁释放通知
+        // 逻辑过期解决缓存击穿，需要提前预热，缓存中没有的店铺视为不存在
+        Shop shop = "logical-expire".equals(shopCacheMode)
+                ? cacheClient.queryWithLogicalExpire(
+                        CACHE_SHOP_KEY, id, Shop.class, this::getById,
+                        CACHE_SHOP_TTL, TimeUnit.SECONDS)
+                : cacheClient.queryWithMutex(
+                        CACHE_SHOP_KEY, id, Shop.class, this::getById,
+                        CACHE_SHOP_TTL, TimeUnit.MINUTES);
         if(shop==null){
             return Result.fail("店铺不存在！");
         }
@@ -129,67 +136,6 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 //        // 6.4、返回过期的商铺信息
 //        return shop;
 //
-//    }
-
-//    public Shop queryWithMutex(Long id){
-//
-//        String key=CACHE_SHOP_KEY + id;
-//        // 1、从redis查看商铺缓存
-//        String shopJson = stringRedisTemplate.opsForValue().get(key);
-//
-//        // 2、判断是否存在
-//        if(StrUtil.isNotBlank(shopJson)){
-//            // 3、存在，转换回Shop类型直接返回
-//            return JSONUtil.toBean(shopJson, Shop.class);
-//        }
-//
-//        // 判断命中的是否是空值
-//        if(shopJson!=null){
-//            // 返回一个错误
-//            return null;
-//        }
-//
-//        // 4、实现缓存重建
-//        // 4.1、获取互斥锁
-//        String lockKey="lock:shop:"+id;
-//        Shop shop=null;
-//
-//        try {
-//            boolean isLock = tryLock(lockKey);
-//            // 4.2、判断是否获取成功
-//            if(!isLock){
-//                // 4.3、失败，则休眠并重试
-//                Thread.sleep(50);
-//                return queryWithMutex(id);
-//            }
-//
-//
-//            // 4.4、成功，根据id查询数据库
-//            shop = getById(id);
-//
-////            // 模拟重建延时
-////            Thread.sleep(200);
-//
-//            // 5、不存在，返回错误
-//            if(shop==null){
-//                // 将空值写入Redis
-//                stringRedisTemplate.opsForValue().set(key,"",CACHE_NULL_TTL,TimeUnit.MINUTES);
-//                // 返回错误信息
-//                return null;
-//            }
-//
-//            // 6、存在,转换成String类型，并写入redis
-//            stringRedisTemplate.opsForValue().set(key,JSONUtil.toJsonStr(shop),CACHE_SHOP_TTL, TimeUnit.MINUTES);
-//        } catch (InterruptedException e) {
-//            throw new RuntimeException(e);
-//        } finally {
-//            // 7、释放互斥锁
-//            unLock(lockKey);
-//        }
-//
-//        // 8、返回
-//        return shop;
-//
 //    }
 
     // 实现缓存穿透
@@ -1,9 +1,8 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
@@ -11,20 +10,28 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BeanConverters;
+import com.hmdp.utils.LoginSessionCache;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.SignedTokenService;
+import com.hmdp.utils.SmsDispatcher;
+import com.hmdp.utils.TokenTtlRefresher;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.connection.BitFieldSubCommands;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpSession;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -47,6 +54,34 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private LoginSessionCache loginSessionCache;
+
+    @Resource
+    private TokenTtlRefresher tokenTtlRefresher;
+
+    @Resource
+    private SignedTokenService signedTokenService;
+
+    @Resource
+    private SmsDispatcher smsDispatcher;
+
+    private static final DefaultRedisScript<Long> SEND_CODE_SCRIPT;
+    static{
+        SEND_CODE_SCRIPT=new DefaultRedisScript<>();
+        // 设置lua脚本地址为send_code.lua
+        SEND_CODE_SCRIPT.setLocation(new ClassPathResource("send_code.lua"));
+        // 设置返回值类型为Long
+        SEND_CODE_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final DefaultRedisScript<Long> SEND_CODE_UNDO_SCRIPT;
+    static{
+        SEND_CODE_UNDO_SCRIPT=new DefaultRedisScript<>();
+        SEND_CODE_UNDO_SCRIPT.setLocation(new ClassPathResource("send_code_undo.lua"));
+        SEND_CODE_UNDO_SCRIPT.setResultType(Long.class);
+    }
+
     @Override
     public Result sendCode(String phone, HttpSession session) {
 
@@ -56,14 +91,42 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             return Result.fail("手机号格式错误！");
         }
 
-        //3、符合，生成验证码(生成6位的验证码)
+        //3、预留发送队列的位置，队列已满直接拒绝
+        if(!smsDispatcher.tryReserve()){
+            return Result.fail("短信发送繁忙，请稍后再试");
+        }
+
+        //4、符合，生成验证码(生成6位的验证码)
         String code = RandomUtil.randomNumbers(6);
 
-        //4、保存验证码到Redis  // set key value ex 120
-        stringRedisTemplate.opsForValue().set(LOGIN_CODE_KEY+phone,code,LOGIN_CODE_TTL, TimeUnit.MINUTES);
+        //5、执行lua脚本：校验冷却时间和每日上限，保存验证码到Redis
+        String dailyKey=SMS_DAILY_KEY+phone+LocalDate.now().format(DateTimeFormatter.ofPattern(":yyyyMMdd"));
+        List<String> keys = Arrays.asList(LOGIN_CODE_KEY+phone, SMS_COOLDOWN_KEY+phone, dailyKey);
+        Long result;
+        try {
+            result = stringRedisTemplate.execute(
+                    SEND_CODE_SCRIPT,
+                    keys,
+                    code, String.valueOf(TimeUnit.MINUTES.toSeconds(LOGIN_CODE_TTL)),
+                    String.valueOf(SMS_COOLDOWN_TTL), String.valueOf(SMS_DAILY_MAX)
+            );
+        } catch (RuntimeException e) {
+            smsDispatcher.release();
+            throw e;
+        }
+        int r=result.intValue();
+        if(r!=0){
+            smsDispatcher.release();
+            return Result.fail(r==1?"发送过于频繁，请"+SMS_COOLDOWN_TTL+"秒后再试":"今日验证码发送次数已达上限");
+        }
 
-        //5、发送验证码(暂时以日志的形式代替展现)
-        log.debug("发送短信验证码成功，验证码：{}",code);
+        //6、加入发送队列，由后台线程发送，立即返回
+        if(!smsDispatcher.submit(phone, code)){
+            //6.1、没有入队，撤销验证码、冷却时间和当日次数，用户可以立即重试
+            log.error("短信发送队列已满，验证码未发送，手机号：{}",phone);
+            stringRedisTemplate.execute(SEND_CODE_UNDO_SCRIPT, keys, code);
+            return Result.fail("短信发送繁忙，请稍后再试");
+        }
 
         //返回ok
         return Result.ok();
@@ -95,27 +158,49 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             user=createUserWithPhone(phone);
         }
 
+        UserDTO userDTO=BeanConverters.toUserDTO(user);
+
+        // 签名token模式下，用户信息写入token本身，不保存到redis
+        if(signedTokenService.isEnabled()){
+            return Result.ok(signedTokenService.issue(userDTO));
+        }
+
         // 7、保存用户信息到redis中
         // 7.1、随机生成token，作为登录令牌
         String token = UUID.randomUUID().toString(true);//随机生成一个没有下滑线的token
         
         //  7.2、将User对象转为Hash存储
-        UserDTO userDTO=BeanUtil.copyProperties(user, UserDTO.class);
-        Map<String, Object> userMap= BeanUtil.beanToMap(userDTO,new HashMap<>(),
-                CopyOptions.create()
-                        .setIgnoreNullValue(true)
-                        .setFieldValueEditor((fieldName,fieldValue)->fieldValue.toString()));
+        Map<String, Object> userMap= BeanConverters.toMap(userDTO);
 
         //  7.3、存储
         String tokenKey=LOGIN_USER_KEY+token;
         stringRedisTemplate.opsForHash().putAll(tokenKey,userMap);
         //  7.4、设置token有效期
         stringRedisTemplate.expire(tokenKey,LOGIN_USER_TTL,TimeUnit.MINUTES);
+        tokenTtlRefresher.markRefreshed(token);
 
         //  8、返回token
         return Result.ok(token);
     }
 
+    @Override
+    public Result logout(String token) {
+        if(StrUtil.isBlank(token)){
+            return Result.ok();
+        }
+        // 签名token加入吊销集合
+        if(signedTokenService.isEnabled() && signedTokenService.isSignedToken(token)){
+            signedTokenService.revoke(token);
+            return Result.ok();
+        }
+        // 1、删除redis中的登录信息
+        stringRedisTemplate.delete(LOGIN_USER_KEY + token);
+        // 2、通知所有节点删除本地缓存
+        loginSessionCache.invalidateToken(token);
+        tokenTtlRefresher.forget(token);
+        return Result.ok();
+    }
+
     @Override
     public Result sign() {
         // 1、获取当前登录用户
@@ -1,32 +1,41 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ScrollResult;
+import com.hmdp.dto.SeckillTicketDTO;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.OrderQueue;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.ScrollCursor;
+import com.hmdp.utils.SeckillWaitingRoom;
 import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.VoucherOrderShardHolder;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.data.redis.connection.stream.*;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
-import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.hmdp.utils.SystemConstants.VOUCHER_ORDER_SHARD_COUNT;
 
 /**
  * <p>
@@ -50,186 +59,123 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private StringRedisTemplate stringRedisTemplate;
 
     @Resource
-    private RedissonClient redissonClient;
+    private SeckillWaitingRoom seckillWaitingRoom;
+
+    @Resource
+    private OrderQueue orderQueue;
 
-    // 线程池
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+    @Value("${hmdp.scroll.page-size:10}")
+    private int scrollPageSize;
+
+    // 分表并行查询线程池
+    private static final ExecutorService SHARD_QUERY_EXECUTOR = Executors.newFixedThreadPool(VOUCHER_ORDER_SHARD_COUNT);
 
     // 当前类初始化完毕后来去执行
     @PostConstruct
     private void init(){
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
-    }
-
-    String queueName="stream.orders";
-
-    // 内部类
-    private class VoucherOrderHandler implements Runnable{
-        @Override
-        public void run() {
-            while(true){
-                try {
-                    // 1、获取消息队列中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 2000 STREAMS streams.order >
-                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                            StreamOffset.create(queueName, ReadOffset.lastConsumed())
-                    );
-                    // 2、判断消息获取是否成功
-                    if(list == null|| list.isEmpty()) {
-                        // 2.1、如果获取失败，说明没有消息，继续下一次循环
-                        continue;
-                    }
-                    // 3、解析消息中的订单信息
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-                    // 4、如果获取成功，可以下单
-                    handleVoucherOrder(voucherOrder);
-                    // 5、ACK确认
-                    stringRedisTemplate.opsForStream().acknowledge(queueName,"g1",record.getId());
-
-                } catch (Exception e) {
-                    log.error("处理订单异常"+e);
-                    handlePendingList();
-                }
-            }
-        }
+        orderQueue.start(this::handleVoucherOrders);
     }
 
-    private void handlePendingList() {
-        while(true){
-            try {
-                // 1、获取pending-list中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 STREAMS streams.order 0
-                List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                        Consumer.from("g1", "c1"),
-                        StreamReadOptions.empty().count(1),
-                        StreamOffset.create(queueName, ReadOffset.from("0"))
-                );
-                // 2、判断消息获取是否成功
-                if(list == null|| list.isEmpty()) {
-                    // 2.1、如果获取失败，说明pending-list没有异常消息，break循环
-                    break;
-                }
-                // 3、解析消息中的订单信息
-                MapRecord<String, Object, Object> record = list.get(0);
-                Map<Object, Object> values = record.getValue();
-                VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-                // 4、如果获取成功，可以下单
-                handleVoucherOrder(voucherOrder);
-                // 5、ACK确认
-                stringRedisTemplate.opsForStream().acknowledge(queueName,"g1",record.getId());
-
-            } catch (Exception e) {
-                log.error("处理pending-list订单异常"+e);
-                try {
-                    Thread.sleep(20);
-                } catch (InterruptedException ex) {
-                    ex.printStackTrace();
-                }
-            }
+    private void handleVoucherOrders(List<VoucherOrder> voucherOrders) {
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            handleVoucherOrder(voucherOrder);
         }
     }
 
-
-    /* // 阻塞队列
-     private BlockingQueue<VoucherOrder> orderTasks=new ArrayBlockingQueue<>(1024*1024);
-     // 内部类
-     private class VoucherOrderHandler implements Runnable{
- 
-         @Override
-         public void run() {
-             while(true){
-                 try {
-                     // 1、获取阻塞队列中的订单信息
-                     VoucherOrder voucherOrder=orderTasks.take();
-                     // 2、创建订单
-                     handleVoucherOrder(voucherOrder);
-                 } catch (InterruptedException e) {
-                     log.error("处理订单异常"+e);
-                 }
-             }
-         }
-     }
- */
     private void handleVoucherOrder(VoucherOrder voucherOrder) {
-        // 1、获取用户
-        Long userId = voucherOrder.getUserId();
-
-        // 2、创建锁对象
-        RLock lock = redissonClient.getLock("lock:order:" + userId);
-
-        // 3、获取锁
-        boolean isLock = lock.tryLock();
-
-        // 4、判断是否获取锁成功
-        if(!isLock){
-            // 获取锁失败，返回错误或重试
-            log.error("不允许重复下单");
-            return;
-        }
-
-        try {
-            // 获取代理对象（事务）
-            proxy.createVoucherOrder(voucherOrder);
-        } finally {
-            //释放锁
-            lock.unlock();
-        }
+        // 一人一单由 tb_voucher_order 上的唯一索引 uk_user_voucher 保证，
+        // 消息重复投递时插入会因唯一键冲突而被忽略，因此这里不再需要分布式锁
+        proxy.createVoucherOrder(voucherOrder);
     }
 
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
     static{
         SECKILL_SCRIPT=new DefaultRedisScript<>();
-        // 设置lua脚本地址为unlock.lua
-        SECKILL_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
+        // 设置lua脚本地址为seckill.lua
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
         // 设置返回值类型为Long
         SECKILL_SCRIPT.setResultType(Long.class);
     }
 
+    // 代理对象（事务），延迟注入，消费者在启动时重放订单也能拿到
+    @Lazy
+    @Resource
     private IVoucherOrderService proxy;
 
     @Override
     public Result seckillVoucher(Long voucherId) {
         // 获取用户
         Long userId = UserHolder.getUser().getId();
-        // 获取订单id
-        long orderId = redisIdWorker.nextId("order");
-
-        // 1、执行lua脚本
-        Long result = stringRedisTemplate.execute(
-                SECKILL_SCRIPT,
-                Collections.emptyList(),
-                voucherId.toString(), userId.toString(),String.valueOf(orderId)
-
-        );
+        // 进入等候室，并发超限时返回排队凭证
+        return seckillWaitingRoom.enter(voucherId, userId, () -> doSeckill(voucherId, userId));
+    }
 
-        // 2、判断结果是为0
-        int r=result.intValue();
-        if(r!=0){
-            // 2.1、不为0，代表没有购买资格
-            return Result.fail(r ==1?"库存不足":"不能重复下单");
+    @Override
+    public Result queryTicket(String ticketId) {
+        SeckillTicketDTO ticket = seckillWaitingRoom.getTicket(ticketId, UserHolder.getUser().getId());
+        if(ticket == null){
+            return Result.fail("排队凭证不存在或已过期");
         }
+        return Result.ok(ticket);
+    }
 
-        // 3、获取代理对象
-        proxy = (IVoucherOrderService) AopContext.currentProxy();
-
+    @Override
+    public Result queryMyOrders() {
+        Long userId = UserHolder.getUser().getId();
+        // 按用户查询只需访问一张分表
+        List<VoucherOrder> orders = VoucherOrderShardHolder.routeByUser(userId,
+                () -> query().eq("user_id", userId).orderByDesc("create_time").list());
+        return Result.ok(orders);
+    }
 
-        // 4、返回订单id
-        return Result.ok(orderId);
+    @Override
+    public Result queryOrdersOfVoucher(Long voucherId, String cursor, Integer size) {
+        ScrollCursor from;
+        try {
+            from = ScrollCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标!");
+        }
+        int count = ScrollCursor.pageSize(size, scrollPageSize);
+        // 1、并行查询所有分表，每张分表只取游标之后的 count 条，订单id按时间递增，游标只使用id
+        // select * from tb_voucher_order_{n} where voucher_id = ? and id < ? order by id desc limit count
+        List<CompletableFuture<List<VoucherOrder>>> futures = new ArrayList<>(VOUCHER_ORDER_SHARD_COUNT);
+        for (int i = 0; i < VOUCHER_ORDER_SHARD_COUNT; i++) {
+            int shard = i;
+            futures.add(CompletableFuture.supplyAsync(() -> VoucherOrderShardHolder.routeToShard(shard,
+                    () -> query()
+                            .eq("voucher_id", voucherId)
+                            .lt(from != null, "id", from == null ? null : from.getId())
+                            .orderByDesc("id")
+                            .last("LIMIT " + count)
+                            .list()), SHARD_QUERY_EXECUTOR));
+        }
+        // 2、合并结果，按订单id倒序取前 count 条
+        List<VoucherOrder> orders = new ArrayList<>();
+        for (CompletableFuture<List<VoucherOrder>> future : futures) {
+            orders.addAll(future.join());
+        }
+        orders.sort(Comparator.comparing(VoucherOrder::getId, Comparator.reverseOrder()));
+        List<VoucherOrder> page = orders.size() > count ? orders.subList(0, count) : orders;
+        // 3、封装并返回
+        ScrollResult r = new ScrollResult();
+        r.setList(page);
+        if(page.size() == count){
+            r.setCursor(ScrollCursor.of(0, page.get(page.size() - 1).getId()).encode());
+        }
+        return Result.ok(r);
     }
 
-   /* @Override
-    public Result seckillVoucher(Long voucherId) {
-        // 获取用户
-        Long userId = UserHolder.getUser().getId();
+    private Result doSeckill(Long voucherId, Long userId) {
+        // 获取订单id
+        long orderId = redisIdWorker.nextId("order");
 
         // 1、执行lua脚本
         Long result = stringRedisTemplate.execute(
                 SECKILL_SCRIPT,
                 Collections.emptyList(),
-                voucherId.toString(), userId.toString()
-
+                voucherId.toString(), userId.toString(),String.valueOf(orderId),
+                orderQueue.enqueuedByScript() ? "1" : "0"
         );
 
         // 2、判断结果是为0
@@ -238,26 +184,19 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
             // 2.1、不为0，代表没有购买资格
             return Result.fail(r ==1?"库存不足":"不能重复下单");
         }
-        // 2.2、为0，有购买资格，把下单信息保存到阻塞队列
-        VoucherOrder voucherOrder = new VoucherOrder();
-        // 2.3、订单id
-        long orderId = redisIdWorker.nextId("order");
-        voucherOrder.setId(orderId);
-        // 2.4、用户id
-        voucherOrder.setUserId(userId);
-        // 2.5、代金劵id
-        voucherOrder.setVoucherId(voucherId);
-        // 2.6、放入阻塞队列
-        orderTasks.add(voucherOrder);
-
-        // 3、获取代理对象
-        proxy = (IVoucherOrderService) AopContext.currentProxy();
 
+        // 3、脚本未写入队列时，由程序写入订单队列
+        if(!orderQueue.enqueuedByScript()){
+            VoucherOrder voucherOrder = new VoucherOrder();
+            voucherOrder.setId(orderId);
+            voucherOrder.setUserId(userId);
+            voucherOrder.setVoucherId(voucherId);
+            orderQueue.offer(voucherOrder);
+        }
 
         // 4、返回订单id
         return Result.ok(orderId);
     }
-*/
 
     /* @Override
     public Result seckillVoucher(Long voucherId) {
@@ -312,34 +251,25 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 
     @Transactional
     public void createVoucherOrder(VoucherOrder voucherOrder) {
-        // 5、一人一单
-        Long userId = voucherOrder.getUserId();
-
-
-            // 5.1、查询订单
-            Integer count = query().eq("user_id", userId).eq("voucher_id", voucherOrder).count();
-            // 5.2、判断是否存在
-            if (count > 0) {
-                //用户已经购买过了
-                log.error("用户已经购买过一次!");
-                return;
-            }
-
-            // 6、扣减库存
-            boolean success = seckillVoucherService.update()
-                    .setSql("stock = stock - 1") // set stock = stock - 1
-                    .eq("voucher_id", voucherOrder).gt("stock", 0) // where id = ? and stock =?
-                    .update();
-            if (!success) {
-                // 扣减失败
-                log.error("库存不足！");
-                return;
-            }
-
-            // 7、创建订单
-            save(voucherOrder);
-
-
+        // 5、一人一单：先插入订单，依赖唯一索引 (user_id, voucher_id) 保证幂等
+        try {
+            // 5.1、订单写入用户所在的分表
+            VoucherOrderShardHolder.routeByUser(voucherOrder.getUserId(), () -> save(voucherOrder));
+        } catch (DuplicateKeyException e) {
+            // 5.2、订单已存在，说明是重复消息，视为处理成功
+            log.debug("订单已存在，忽略重复消息，userId={}, voucherId={}", voucherOrder.getUserId(), voucherOrder.getVoucherId());
+            return;
+        }
 
+        // 6、扣减库存
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock - 1") // set stock = stock - 1
+                .eq("voucher_id", voucherOrder.getVoucherId()).gt("stock", 0) // where id = ? and stock > 0
+                .update();
+        if (!success) {
+            // 扣减失败，回滚已插入的订单
+            log.error("库存不足！");
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        }
     }
 }
@@ -0,0 +1,42 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Set;
+
+public class AdminInterceptor implements HandlerInterceptor {
+
+    // 管理员的用户id
+    private final Set<Long> adminIds;
+
+    public AdminInterceptor(Set<Long> adminIds){
+        this.adminIds=adminIds;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 1、判断接口是否只允许管理员访问
+        if(!(handler instanceof HandlerMethod)){
+            return true;
+        }
+        HandlerMethod handlerMethod = (HandlerMethod) handler;
+        if(!handlerMethod.hasMethodAnnotation(AdminOnly.class)
+                && !handlerMethod.getBeanType().isAnnotationPresent(AdminOnly.class)){
+            return true;
+        }
+        // 2、判断当前用户是否是管理员
+        UserDTO user = UserHolder.getUser();
+        if(user == null || !adminIds.contains(user.getId())){
+            // 不是，设置状态码 403 Forbidden
+            response.setStatus(403);
+            // 拦截
+            return false;
+        }
+        // 放行
+        return true;
+    }
+}
@@ -0,0 +1,99 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.User;
+import com.hmdp.entity.VoucherOrder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 热点路径上的对象转换，手写字段赋值代替 BeanUtil 的反射拷贝
+ * <p>
+ * 新增字段时需要同步修改这里的转换方法。
+ * </p>
+ */
+public class BeanConverters {
+
+    private BeanConverters() {
+    }
+
+    // 代替 BeanUtil.copyProperties(user, UserDTO.class)
+    public static UserDTO toUserDTO(User user) {
+        if(user == null){
+            return null;
+        }
+        UserDTO userDTO = new UserDTO();
+        userDTO.setId(user.getId());
+        userDTO.setNickName(user.getNickName());
+        userDTO.setIcon(user.getIcon());
+        return userDTO;
+    }
+
+    // 代替 BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false)，map为Redis中登录用户的Hash
+    public static UserDTO toUserDTO(Map<Object, Object> userMap) {
+        UserDTO userDTO = new UserDTO();
+        userDTO.setId(toLong(userMap.get("id")));
+        userDTO.setNickName(toStr(userMap.get("nickName")));
+        userDTO.setIcon(toStr(userMap.get("icon")));
+        return userDTO;
+    }
+
+    // 代替 BeanUtil.beanToMap(userDTO, ...)，忽略null值，值都转为字符串
+    public static Map<String, Object> toMap(UserDTO userDTO) {
+        Map<String, Object> userMap = new HashMap<>(4);
+        if(userDTO.getId() != null){
+            userMap.put("id", userDTO.getId().toString());
+        }
+        if(userDTO.getNickName() != null){
+            userMap.put("nickName", userDTO.getNickName());
+        }
+        if(userDTO.getIcon() != null){
+            userMap.put("icon", userDTO.getIcon());
+        }
+        return userMap;
+    }
+
+    // 代替 BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true)，map为订单消息
+    public static VoucherOrder toVoucherOrder(Map<Object, Object> orderMap) {
+        VoucherOrder voucherOrder = new VoucherOrder();
+        voucherOrder.setId(toLong(orderMap.get("id")));
+        voucherOrder.setUserId(toLong(orderMap.get("userId")));
+        voucherOrder.setVoucherId(toLong(orderMap.get("voucherId")));
+        return voucherOrder;
+    }
+
+    // 代替 BeanUtil.copyProperties(blog, Blog.class)，热门笔记快照中的对象共享，每个请求使用副本
+    public static Blog copyOf(Blog blog) {
+        Blog copy = new Blog();
+        copy.setId(blog.getId());
+        copy.setShopId(blog.getShopId());
+        copy.setUserId(blog.getUserId());
+        copy.setIcon(blog.getIcon());
+        copy.setName(blog.getName());
+        copy.setIsLike(blog.getIsLike());
+        copy.setTitle(blog.getTitle());
+        copy.setImages(blog.getImages());
+        copy.setContent(blog.getContent());
+        copy.setLiked(blog.getLiked());
+        copy.setComments(blog.getComments());
+        copy.setCreateTime(blog.getCreateTime());
+        copy.setUpdateTime(blog.getUpdateTime());
+        return copy;
+    }
+
+    private static Long toLong(Object value) {
+        if(value == null){
+            return null;
+        }
+        if(value instanceof Long){
+            return (Long) value;
+        }
+        return Long.valueOf(value.toString());
+    }
+
+    private static String toStr(Object value) {
+        return value == null ? null : value.toString();
+    }
+}
@@ -0,0 +1,177 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Blog;
+import com.hmdp.mapper.BlogMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_EPOCH_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
+
+/**
+ * 热门笔记排行
+ * <p>
+ * blog:hot 中每篇笔记的热度 = Σ 权重 × 2^((事件时间 - 基准时间) / 半衰期)，点赞、评论时通过 ZINCRBY 增量更新，
+ * 越晚发生的互动热度越高，等价于已有热度按半衰期随时间衰减，不需要重新计算所有笔记。
+ * 定时任务把所有热度按经过的时间统一衰减，并把基准时间 blog:hot:epoch 移到当前时间，避免数值溢出。
+ * </p>
+ * <p>
+ * 各节点定时把排名前 BLOG_HOT_SNAPSHOT_SIZE 的笔记查询出来保存为本地快照，/blog/hot 直接从快照分页。
+ * </p>
+ */
+@Slf4j
+@Component
+public class BlogHotBoard {
+
+    private static final DefaultRedisScript<Long> HOT_INCR_SCRIPT;
+    private static final DefaultRedisScript<Long> HOT_REBASE_SCRIPT;
+    static{
+        HOT_INCR_SCRIPT=new DefaultRedisScript<>();
+        HOT_INCR_SCRIPT.setLocation(new ClassPathResource("hot_incr.lua"));
+        HOT_INCR_SCRIPT.setResultType(Long.class);
+        HOT_REBASE_SCRIPT=new DefaultRedisScript<>();
+        HOT_REBASE_SCRIPT.setLocation(new ClassPathResource("hot_rebase.lua"));
+        HOT_REBASE_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 热度半衰期
+     */
+    public static final long HALF_LIFE_MILLIS = TimeUnit.HOURS.toMillis(SystemConstants.BLOG_HOT_HALF_LIFE_HOURS);
+
+    // 快照刷新的间隔
+    private static final long REFRESH_INTERVAL_SECONDS = 30;
+
+    private final ScheduledExecutorService refreshExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    // 排名前 BLOG_HOT_SNAPSHOT_SIZE 的笔记，整体替换
+    private volatile List<Blog> snapshot = Collections.emptyList();
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final BlogMapper blogMapper;
+
+    public BlogHotBoard(StringRedisTemplate stringRedisTemplate, BlogMapper blogMapper) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.blogMapper = blogMapper;
+    }
+
+    @PostConstruct
+    private void init(){
+        refreshExecutor.scheduleWithFixedDelay(this::refresh, 0, REFRESH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy(){
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * 评论后增加笔记的热度，点赞的热度在点赞脚本中更新
+     */
+    public void onComment(Long blogId) {
+        stringRedisTemplate.execute(
+                HOT_INCR_SCRIPT,
+                Arrays.asList(BLOG_HOT_KEY, BLOG_HOT_EPOCH_KEY),
+                blogId.toString(), String.valueOf(System.currentTimeMillis()),
+                String.valueOf(HALF_LIFE_MILLIS), String.valueOf(SystemConstants.BLOG_HOT_COMMENT_WEIGHT)
+        );
+    }
+
+    /**
+     * 快照中的一页，返回的是副本，调用者可以修改
+     * @param current 页码，从1开始
+     */
+    public List<Blog> page(int current, int size) {
+        List<Blog> blogs = snapshot;
+        int from = (current - 1) * size;
+        if(current < 1 || from >= blogs.size()){
+            return new ArrayList<>();
+        }
+        List<Blog> page = new ArrayList<>(size);
+        for (Blog blog : blogs.subList(from, Math.min(from + size, blogs.size()))) {
+            page.add(BeanConverters.copyOf(blog));
+        }
+        return page;
+    }
+
+    private void refresh() {
+        try {
+            // 1、热度统一衰减，移动基准时间
+            long now = System.currentTimeMillis();
+            stringRedisTemplate.execute(
+                    HOT_REBASE_SCRIPT,
+                    Arrays.asList(BLOG_HOT_KEY, BLOG_HOT_EPOCH_KEY),
+                    String.valueOf(now), String.valueOf(HALF_LIFE_MILLIS), String.valueOf(SystemConstants.BLOG_HOT_MAX_SIZE)
+            );
+            // 2、排行为空（首次启动或数据丢失），从数据库初始化
+            Set<String> top = stringRedisTemplate.opsForZSet().reverseRange(BLOG_HOT_KEY, 0, SystemConstants.BLOG_HOT_SNAPSHOT_SIZE - 1);
+            if(top == null || top.isEmpty()){
+                seed(now);
+                top = stringRedisTemplate.opsForZSet().reverseRange(BLOG_HOT_KEY, 0, SystemConstants.BLOG_HOT_SNAPSHOT_SIZE - 1);
+            }
+            if(top == null || top.isEmpty()){
+                snapshot = Collections.emptyList();
+                return;
+            }
+            // 3、查询笔记，按排名排序 select * from tb_blog where id in (..)
+            List<Long> ids = top.stream().map(Long::valueOf).collect(Collectors.toList());
+            Map<Long, Blog> blogs = blogMapper.selectBatchIds(ids).stream()
+                    .collect(Collectors.toMap(Blog::getId, Function.identity()));
+            List<Blog> latest = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                Blog blog = blogs.get(id);
+                if(blog != null){
+                    latest.add(blog);
+                }
+            }
+            snapshot = Collections.unmodifiableList(latest);
+        } catch (Exception e) {
+            // 刷新失败时继续使用上一次的快照
+            log.warn("刷新热门笔记快照失败", e);
+        }
+    }
+
+    // 以数据库中的点赞数、评论数初始化，按笔记的创建时间计算衰减
+    private void seed(long now) {
+        // select id, liked, comments, create_time from tb_blog order by liked desc limit ?
+        List<Blog> blogs = blogMapper.selectList(new QueryWrapper<Blog>()
+                .select("id", "liked", "comments", "create_time")
+                .orderByDesc("liked")
+                .last("LIMIT " + SystemConstants.BLOG_HOT_MAX_SIZE));
+        Set<TypedTuple<String>> tuples = new HashSet<>(blogs.size());
+        for (Blog blog : blogs) {
+            int liked = blog.getLiked() == null ? 0 : blog.getLiked();
+            int comments = blog.getComments() == null ? 0 : blog.getComments();
+            double points = liked * SystemConstants.BLOG_HOT_LIKE_WEIGHT + comments * SystemConstants.BLOG_HOT_COMMENT_WEIGHT;
+            if(points <= 0){
+                continue;
+            }
+            double decay = Math.pow(2, (double) (ScrollCursor.toScore(blog.getCreateTime()) - now) / HALF_LIFE_MILLIS);
+            tuples.add(new DefaultTypedTuple<>(blog.getId().toString(), points * decay));
+        }
+        if(!tuples.isEmpty()){
+            stringRedisTemplate.opsForZSet().add(BLOG_HOT_KEY, tuples);
+        }
+    }
+}
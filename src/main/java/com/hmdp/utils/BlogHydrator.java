@@ -0,0 +1,130 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.User;
+import com.hmdp.service.IUserService;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_COUNT_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_TTL;
+
+/**
+ * 批量填充笔记的作者信息、点赞数和当前用户是否点赞
+ * <p>
+ * 在请求线程中通过一个管道读取所有作者的 cache:user:{id}，以及所有笔记的点赞数 HGET 和点赞状态 ZSCORE，
+ * 未命中的用户一次查询数据库并写回缓存。整页只需要常数次往返，不占用额外的线程。
+ * </p>
+ */
+@Component
+public class BlogHydrator {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final IUserService userService;
+
+    public BlogHydrator(StringRedisTemplate stringRedisTemplate, IUserService userService) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.userService = userService;
+    }
+
+    public void hydrate(Blog blog) {
+        hydrate(Collections.singletonList(blog));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void hydrate(List<Blog> blogs) {
+        if(blogs.isEmpty()){
+            return;
+        }
+        UserDTO user = UserHolder.getUser();
+        Long userId = user == null ? null : user.getId();
+        Set<Long> ids = new LinkedHashSet<>();
+        blogs.forEach(blog -> ids.add(blog.getUserId()));
+        List<Long> authorIds = new ArrayList<>(ids);
+        // 1、一个管道查询：HGETALL cache:user:{id}，HGET blog:like:count blogId，登录时再查询 ZSCORE blog:liked:{blogId} userId
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long authorId : authorIds) {
+                conn.hGetAll(CACHE_USER_KEY + authorId);
+            }
+            for (Blog blog : blogs) {
+                String blogId = blog.getId().toString();
+                conn.hGet(BLOG_LIKE_COUNT_KEY, blogId);
+                if(userId != null){
+                    conn.zScore(BLOG_LIKED_KEY + blogId, userId.toString());
+                }
+            }
+            return null;
+        });
+        // 2、作者信息，未命中缓存的查询数据库
+        Map<Long, UserDTO> authors = new HashMap<>(authorIds.size() * 2);
+        List<Long> missing = new ArrayList<>();
+        for (int i = 0; i < authorIds.size(); i++) {
+            Map<Object, Object> userMap = (Map<Object, Object>) results.get(i);
+            if(userMap == null || userMap.isEmpty()){
+                missing.add(authorIds.get(i));
+            }else{
+                authors.put(authorIds.get(i), BeanConverters.toUserDTO(userMap));
+            }
+        }
+        if(!missing.isEmpty()){
+            loadAuthors(missing, authors);
+        }
+        // 3、填充
+        int offset = authorIds.size();
+        int stride = userId == null ? 1 : 2;
+        for (int i = 0; i < blogs.size(); i++) {
+            Blog blog = blogs.get(i);
+            UserDTO author = authors.get(blog.getUserId());
+            if(author != null){
+                blog.setName(author.getNickName());
+                blog.setIcon(author.getIcon());
+            }
+            // 点赞数以Redis为准，数据库中的值定时写回，可能稍有延迟
+            Object count = results.get(offset + i * stride);
+            if(count != null){
+                blog.setLiked(Integer.valueOf((String) count));
+            }
+            if(userId != null){
+                blog.setIsLike(results.get(offset + i * stride + 1) != null);
+            }
+        }
+    }
+
+    private void loadAuthors(List<Long> missing, Map<Long, UserDTO> authors) {
+        // 1、一次查询数据库 select * from tb_user where id in (..)
+        List<UserDTO> loaded = new ArrayList<>(missing.size());
+        for (User user : userService.listByIds(missing)) {
+            UserDTO userDTO = BeanConverters.toUserDTO(user);
+            authors.put(userDTO.getId(), userDTO);
+            loaded.add(userDTO);
+        }
+        // 2、管道批量写回缓存
+        long ttlSeconds = TimeUnit.MINUTES.toSeconds(CACHE_USER_TTL);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (UserDTO userDTO : loaded) {
+                String key = CACHE_USER_KEY + userDTO.getId();
+                Map<String, String> hash = new HashMap<>(4);
+                BeanConverters.toMap(userDTO).forEach((field, value) -> hash.put(field, value.toString()));
+                conn.hMSet(key, hash);
+                conn.expire(key, ttlSeconds);
+            }
+            return null;
+        });
+    }
+}
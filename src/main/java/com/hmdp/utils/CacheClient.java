@@ -1,6 +1,5 @@
 package com.hmdp.utils;
 
-import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
@@ -10,6 +9,8 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -23,8 +24,11 @@ public class CacheClient {
 
     private final StringRedisTemplate stringRedisTemplate;
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    private final RedisLockFactory lockFactory;
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate, RedisLockFactory lockFactory) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.lockFactory = lockFactory;
     }
 
     // 将数据转为json字符串存入到Redis缓存中
@@ -83,9 +87,66 @@ public class CacheClient {
 
     }
 
+    // 互斥锁解决缓存击穿的工具类，未获取到锁的线程等待锁释放通知，而不是休眠后递归重试
+    public <R,ID> R queryWithMutex(
+            String keyPrefix, ID id, Class<R> type,
+            Function<ID,R> dbFallback,Long time,TimeUnit unit){
+
+        String key=keyPrefix + id;
+        // 1、从redis查看缓存
+        String json = stringRedisTemplate.opsForValue().get(key);
+
+        // 2、判断是否存在
+        if(StrUtil.isNotBlank(json)){
+            // 3、存在，直接返回
+            return JSONUtil.toBean(json, type);
+        }
+
+        // 判断命中的是否是空值
+        if(json!=null){
+            return null;
+        }
+
+        // 4、实现缓存重建
+        // 4.1、获取互斥锁，等待其他线程重建完成后释放锁
+        ILock lock = lockFactory.getLock("shop:" + id);
+        if(!lock.tryLock(LOCK_SHOP_WAIT_MILLIS, LOCK_SHOP_TTL)){
+            // 4.2、等待超时，直接查询数据库，不写缓存
+            log.warn("等待缓存重建超时：{}", key);
+            return dbFallback.apply(id);
+        }
+
+        try {
+            // 4.3、成功，再次检查缓存，持有锁的线程可能已经完成重建
+            json = stringRedisTemplate.opsForValue().get(key);
+            if(json!=null){
+                return StrUtil.isNotBlank(json) ? JSONUtil.toBean(json, type) : null;
+            }
+
+            // 4.4、根据id查询数据库
+            R r = dbFallback.apply(id);
+
+            // 5、不存在，将空值写入Redis
+            if(r==null){
+                stringRedisTemplate.opsForValue().set(key,"",CACHE_NULL_TTL,TimeUnit.MINUTES);
+                return null;
+            }
+
+            // 6、存在，写入redis
+            this.set(key,r,time,unit);
+            return r;
+        } finally {
+            // 7、释放互斥锁
+            lock.unlock();
+        }
+    }
+
     // 线程池
     private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
 
+    // 本机正在重建的key，每个key同一时间最多提交一个重建任务
+    private final Set<String> rebuilding = ConcurrentHashMap.newKeySet();
+
     // 逻辑过期解决缓存击穿的工具类
     public <R,ID> R queryWithLogicalExpire(
             String keyPrefix,ID id,Class<R> type,
@@ -114,44 +175,50 @@ public class CacheClient {
 
         // 5.2、已过期，需要缓存重建
 
-        // 6、缓存重建
-        // 6.1、获取互斥锁
-        String lockKey=LOCK_SHOP_KEY+id;
-        boolean isLock = tryLock(lockKey);
-
-        // 6.2、判断是否获取锁成功
-        if(isLock){
-            // 6.3、成功，开启独立线程，实现缓存重建
-            CACHE_REBUILD_EXECUTOR.submit(()->{
-                try {
-                    // 重建缓存
-                    // 1、先查数据库
-                    R r1 = dbFallback.apply(id);
-
-                    // 2、写入Redis
-                    this.setWithLogicalExpire(keyPrefix,r1,time,unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    //  释放锁
-                    unLock(lockKey);
-
-                }
-
-            });
+        // 6、缓存重建，先在本机标记重建中，标记成功才提交任务，避免每个读到过期数据的请求都提交一个任务
+        if(!rebuilding.add(key)){
+            // 6.4、本机已有重建任务，返回过期的商铺信息
+            return r;
         }
+        CACHE_REBUILD_EXECUTOR.submit(()->{
+            try {
+                rebuildWithLogicalExpire(key, id, dbFallback, time, unit);
+            } finally {
+                rebuilding.remove(key);
+            }
+        });
 
         // 6.4、返回过期的商铺信息
         return r;
 
     }
 
-    private boolean tryLock(String key){
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
-        return BooleanUtil.isTrue(flag);
+    private <R,ID> void rebuildWithLogicalExpire(String key, ID id, Function<ID,R> dbFallback, Long time, TimeUnit unit){
+        // 6.1、在独立线程中获取互斥锁，锁与线程绑定，必须在同一线程中释放
+        ILock lock = lockFactory.getLock("shop:" + id);
+        // 6.2、判断是否获取锁成功，失败说明其他节点正在重建
+        if(!lock.tryLock(LOCK_SHOP_TTL)){
+            return;
+        }
+        try {
+            // 6.3、成功，再次检查缓存是否已被其他节点重建
+            String latest = stringRedisTemplate.opsForValue().get(key);
+            if(StrUtil.isNotBlank(latest)
+                    && JSONUtil.toBean(latest, RedisData.class).getExpireTime().isAfter(LocalDateTime.now())){
+                return;
+            }
+            // 重建缓存
+            // 1、先查数据库
+            R r1 = dbFallback.apply(id);
+
+            // 2、写入Redis
+            this.setWithLogicalExpire(key,r1,time,unit);
+        } catch (Exception e) {
+            log.error("缓存重建失败：{}", key, e);
+        } finally {
+            //  释放锁
+            lock.unlock();
+        }
     }
 
-    private void unLock(String key){
-        stringRedisTemplate.delete(key);
-    }
 }
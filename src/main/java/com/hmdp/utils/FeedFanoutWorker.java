@@ -0,0 +1,268 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.entity.Follow;
+import com.hmdp.service.IFollowService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.FEED_BIGV_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_FANOUT_PROGRESS_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_FANOUT_PROGRESS_TTL;
+
+/**
+ * 笔记推送的后台任务
+ * <p>
+ * 发布笔记时只向 stream.feed 写入一条消息，由后台线程推送到粉丝的收件箱：
+ * 按主键分页（id > 上一页最大id）读取粉丝，每页通过管道批量 ZADD（见 {@link FeedInbox#push}），
+ * 每推送完一页把最大id记录到 feed:fanout:{blogId}，进程崩溃后从pending-list重新读取消息并从该位置继续推送。
+ * 推送使用消息中的时间戳作为分数，重复推送同一页不会产生重复数据。
+ * 同一条消息投递 MAX_DELIVERIES 次仍然失败，或者消息内容无法解析，转入 stream.feed.dead 后确认，不再阻塞后续消息。
+ * 写入时按 QUEUE_MAX_LEN 近似裁剪，避免 stream 无限增长。
+ * </p>
+ */
+@Slf4j
+@Component
+public class FeedFanoutWorker {
+
+    private static final String QUEUE_NAME = "stream.feed";
+    private static final String DEAD_LETTER_QUEUE_NAME = "stream.feed.dead";
+    private static final String GROUP_NAME = "g1";
+    // 每条消息最多投递的次数，超过后转入死信队列
+    private static final long MAX_DELIVERIES = 5;
+    // stream 保留的消息数，XADD 时近似裁剪（MAXLEN ~）
+    private static final long QUEUE_MAX_LEN = 100000;
+    // 每页读取的粉丝数，也是每个管道中的 ZADD 数量
+    private static final int PAGE_SIZE = 500;
+
+    // 线程池
+    private static final ExecutorService FEED_FANOUT_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    @Value("${hmdp.feed.bigv-threshold:10000}")
+    private long bigVThreshold;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final IFollowService followService;
+    private final FeedInbox feedInbox;
+
+    public FeedFanoutWorker(StringRedisTemplate stringRedisTemplate, IFollowService followService, FeedInbox feedInbox) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.followService = followService;
+        this.feedInbox = feedInbox;
+    }
+
+    @PostConstruct
+    private void init(){
+        createGroupIfAbsent();
+        FEED_FANOUT_EXECUTOR.submit(() -> {
+            // 先处理上次未完成的推送
+            handlePendingList();
+            while(!Thread.currentThread().isInterrupted()){
+                try {
+                    // 1、获取消息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 2000 STREAMS stream.feed >
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(GROUP_NAME, "c1"),
+                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
+                            StreamOffset.create(QUEUE_NAME, ReadOffset.lastConsumed())
+                    );
+                    if(list == null || list.isEmpty()){
+                        continue;
+                    }
+                    // 2、推送并确认
+                    handleRecords(list);
+                } catch (Exception e) {
+                    log.error("推送笔记异常", e);
+                    handlePendingList();
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    private void destroy(){
+        FEED_FANOUT_EXECUTOR.shutdownNow();
+    }
+
+    /**
+     * 提交推送任务，立即返回
+     */
+    public void publish(Long authorId, Long blogId, long timestamp) {
+        // XADD stream.feed * authorId .. blogId .. time ..
+        Map<String, String> values = new HashMap<>(4);
+        values.put("authorId", authorId.toString());
+        values.put("blogId", blogId.toString());
+        values.put("time", String.valueOf(timestamp));
+        addAndTrim(QUEUE_NAME, values);
+    }
+
+    // 写入并近似裁剪 XTRIM key MAXLEN ~ QUEUE_MAX_LEN，管道一次发送
+    private void addAndTrim(String queueName, Map<String, String> values) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.xAdd(StreamRecords.newRecord().in(queueName).ofStrings(values));
+            conn.xTrim(queueName, QUEUE_MAX_LEN, true);
+            return null;
+        });
+    }
+
+    private void handlePendingList() {
+        while(!Thread.currentThread().isInterrupted()){
+            try {
+                // 1、获取pending-list中的消息 XREADGROUP GROUP g1 c1 COUNT 1 STREAMS stream.feed 0
+                List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                        Consumer.from(GROUP_NAME, "c1"),
+                        StreamReadOptions.empty().count(1),
+                        StreamOffset.create(QUEUE_NAME, ReadOffset.from("0"))
+                );
+                if(list == null || list.isEmpty()){
+                    break;
+                }
+                handleRecords(list);
+            } catch (Exception e) {
+                log.error("处理pending-list推送异常", e);
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void handleRecords(List<MapRecord<String, Object, Object>> list) {
+        for (MapRecord<String, Object, Object> record : list) {
+            handleRecord(record);
+            stringRedisTemplate.opsForStream().acknowledge(QUEUE_NAME, GROUP_NAME, record.getId());
+        }
+    }
+
+    // 推送一条消息，返回后即可确认；失败且未超过投递次数时抛出异常，消息留在pending-list中重试
+    private void handleRecord(MapRecord<String, Object, Object> record) {
+        // 1、解析消息，内容错误（包括已被裁剪的消息）重试也不会成功，直接转入死信队列
+        Long authorId;
+        String blogId;
+        long time;
+        try {
+            Map<Object, Object> value = record.getValue();
+            authorId = Long.valueOf((String) value.get("authorId"));
+            blogId = (String) value.get("blogId");
+            time = Long.parseLong((String) value.get("time"));
+        } catch (RuntimeException e) {
+            deadLetter(record, e);
+            return;
+        }
+        // 2、推送，多次投递仍然失败的消息转入死信队列
+        try {
+            fanOut(authorId, blogId, time);
+        } catch (RuntimeException e) {
+            if(deliveryCount(record) < MAX_DELIVERIES){
+                throw e;
+            }
+            deadLetter(record, e);
+        }
+    }
+
+    // XPENDING stream.feed g1 id id 1，读取消息已投递的次数
+    private long deliveryCount(MapRecord<String, Object, Object> record) {
+        String id = record.getId().getValue();
+        PendingMessages pending = stringRedisTemplate.opsForStream().pending(QUEUE_NAME, GROUP_NAME, Range.closed(id, id), 1);
+        return pending == null || pending.isEmpty() ? 0 : pending.get(0).getTotalDeliveryCount();
+    }
+
+    private void deadLetter(MapRecord<String, Object, Object> record, Exception cause) {
+        // XADD stream.feed.dead * sourceId .. error .. 原消息内容
+        Map<String, String> values = new HashMap<>(8);
+        if(record.getValue() != null){
+            record.getValue().forEach((field, value) -> values.put(String.valueOf(field), String.valueOf(value)));
+        }
+        values.put("sourceId", record.getId().getValue());
+        values.put("error", String.valueOf(cause));
+        addAndTrim(DEAD_LETTER_QUEUE_NAME, values);
+        log.error("推送消息转入死信队列：{}", record.getId(), cause);
+    }
+
+    private void fanOut(Long authorId, String blogId, long time) {
+        // 1、粉丝数超过阈值的作者只写入自己的发件箱，由粉丝读取时拉取
+        if(isBigV(authorId)){
+            feedInbox.pushOutbox(authorId, blogId, time);
+            return;
+        }
+        // 2、读取上次推送到的位置
+        String progressKey = FEED_FANOUT_PROGRESS_KEY + blogId;
+        String progress = stringRedisTemplate.opsForValue().get(progressKey);
+        long lastId = StrUtil.isBlank(progress) ? 0 : Long.parseLong(progress);
+        while(true){
+            // 3、分页读取粉丝 select id, user_id from tb_follow where follow_user_id = ? and id > ? order by id limit 500
+            List<Follow> follows = followService.query()
+                    .select("id", "user_id")
+                    .eq("follow_user_id", authorId)
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + PAGE_SIZE)
+                    .list();
+            if(follows.isEmpty()){
+                break;
+            }
+            // 4、管道批量推送
+            feedInbox.push(follows.stream().map(Follow::getUserId).collect(Collectors.toList()), blogId, time);
+            // 5、记录推送位置
+            lastId = follows.get(follows.size() - 1).getId();
+            stringRedisTemplate.opsForValue().set(progressKey, String.valueOf(lastId), FEED_FANOUT_PROGRESS_TTL, TimeUnit.HOURS);
+            if(follows.size() < PAGE_SIZE){
+                break;
+            }
+        }
+        stringRedisTemplate.delete(progressKey);
+    }
+
+    /**
+     * 是否是粉丝数超过阈值的作者，一旦成为大V不再取消，否则已写入发件箱的笔记会从粉丝的关注流中消失
+     */
+    private boolean isBigV(Long authorId) {
+        if(BooleanUtil.isTrue(stringRedisTemplate.opsForSet().isMember(FEED_BIGV_KEY, authorId.toString()))){
+            return true;
+        }
+        // select count(*) from tb_follow where follow_user_id = ?
+        Integer count = followService.query().eq("follow_user_id", authorId).count();
+        if(count < bigVThreshold){
+            return false;
+        }
+        stringRedisTemplate.opsForSet().add(FEED_BIGV_KEY, authorId.toString());
+        return true;
+    }
+
+    private void createGroupIfAbsent() {
+        try {
+            // XGROUP CREATE stream.feed g1 0 MKSTREAM
+            stringRedisTemplate.opsForStream().createGroup(QUEUE_NAME, ReadOffset.from("0"), GROUP_NAME);
+        } catch (RedisSystemException e) {
+            // BUSYGROUP 代表消费者组已存在
+            log.debug("消费者组已存在：{}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Follow;
+import com.hmdp.mapper.BlogMapper;
+import com.hmdp.mapper.FollowMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.StringRedisConnection.StringTuple;
+import org.springframework.data.redis.connection.DefaultStringTuple;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.FEED_ACTIVE_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_BIGV_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_OUTBOX_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_REBUILD_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_REBUILD_TTL;
+import static com.hmdp.utils.RedisConstants.FOLLOWS_KEY;
+
+/**
+ * 关注流的收件箱和发件箱
+ * <p>
+ * 收件箱和发件箱都只保留最新的 hmdp.feed.inbox-max-size 条，写入时裁剪。
+ * feed:active 记录每个用户最近一次读取关注流的时间，超过 hmdp.feed.inbox-idle-days 天未读取的收件箱被删除，
+ * 推送时也只写入活跃用户的收件箱；用户再次读取时异步从MySQL重建，重建完成前直接从MySQL查询。
+ * 被裁剪过的收件箱、发件箱只在最小分数之上是完整的，各来源分别裁剪，保留的时间范围不同，
+ * 一页的数据低于这些最小分数中的最大值时，整页从MySQL查询。分数统一使用笔记的创建时间（毫秒）。
+ * 关注、取关后异步合并或删除该作者的笔记。
+ * </p>
+ */
+@Slf4j
+@Component
+public class FeedInbox {
+
+    // 每次清理的不活跃用户数
+    private static final int EVICT_BATCH_SIZE = 500;
+    // 清理的间隔
+    private static final long EVICT_INTERVAL_MINUTES = 60;
+
+    @Value("${hmdp.feed.inbox-max-size:1000}")
+    private int maxSize;
+
+    @Value("${hmdp.feed.inbox-idle-days:7}")
+    private int idleDays;
+
+    @Value("${hmdp.feed.backfill-size:20}")
+    private int backfillSize;
+
+    private final ScheduledExecutorService evictExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    // 线程池
+    private static final ExecutorService FEED_MAINTAIN_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final FollowMapper followMapper;
+    private final BlogMapper blogMapper;
+
+    public FeedInbox(StringRedisTemplate stringRedisTemplate, FollowMapper followMapper, BlogMapper blogMapper) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.followMapper = followMapper;
+        this.blogMapper = blogMapper;
+    }
+
+    @PostConstruct
+    private void init(){
+        evictExecutor.scheduleWithFixedDelay(this::evictIdle, EVICT_INTERVAL_MINUTES, EVICT_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    private void destroy(){
+        evictExecutor.shutdownNow();
+        FEED_MAINTAIN_EXECUTOR.shutdownNow();
+    }
+
+    /**
+     * 读取关注流的一页：收件箱与关注的大V的发件箱按分数倒序归并，取游标之后的 count 条
+     * @param from 游标，第一页为null
+     */
+    @SuppressWarnings("unchecked")
+    public List<TypedTuple<String>> read(Long userId, ScrollCursor from, int count) {
+        // 1、记录活跃时间，新加入活跃集合的用户（首次读取或已被清理）没有收件箱，异步重建，本页从MySQL查询
+        Boolean added = stringRedisTemplate.opsForZSet().add(FEED_ACTIVE_KEY, userId.toString(), System.currentTimeMillis());
+        if(Boolean.TRUE.equals(added)){
+            scheduleRebuild(userId);
+            return readFromDb(userId, from, count);
+        }
+        // 2、收件箱，以及关注的大V的发件箱 SINTER follows:{userId} feed:bigv
+        List<String> keys = new ArrayList<>();
+        keys.add(FEED_KEY + userId);
+        Set<String> bigVs = stringRedisTemplate.opsForSet().intersect(FOLLOWS_KEY + userId, FEED_BIGV_KEY);
+        if(bigVs != null){
+            bigVs.forEach(authorId -> keys.add(FEED_OUTBOX_KEY + authorId));
+        }
+        // 3、收件箱是否正在重建；每个来源各取游标之后的 count 条，以及数量和最小分数，判断是否被裁剪过，管道一次发送
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.exists(FEED_REBUILD_KEY + userId);
+            for (String key : keys) {
+                ScrollCursor.query(conn, key, from, count);
+                conn.zCard(key);
+                conn.zRangeWithScores(key, 0, 0);
+            }
+            return null;
+        });
+        if(Boolean.TRUE.equals(results.get(0))){
+            return readFromDb(userId, from, count);
+        }
+        int queryCommands = from == null ? 1 : 2;
+        int stride = queryCommands + 2;
+        List<List<TypedTuple<String>>> boxes = new ArrayList<>(keys.size());
+        // 被裁剪过的来源中最小分数的最大值，在此之上所有来源都是完整的
+        Double floor = null;
+        for (int i = 1; i < results.size(); i += stride) {
+            boxes.add(ScrollCursor.collect(results, i, from));
+            Set<TypedTuple<String>> lowest = (Set<TypedTuple<String>>) results.get(i + queryCommands + 1);
+            if(((Long) results.get(i + queryCommands)) >= maxSize && !lowest.isEmpty()){
+                double score = lowest.iterator().next().getScore();
+                floor = floor == null ? score : Math.max(floor, score);
+            }
+        }
+        // 4、按时间戳多路归并
+        List<TypedTuple<String>> page = FeedMerger.merge(boxes, count);
+        // 5、不满一页，或者最后一条不高于最小分数（分数相同的数据可能已被裁剪），超出了Redis中完整的范围，从MySQL查询
+        if(floor != null && (page.size() < count || page.get(page.size() - 1).getScore() <= floor)){
+            return readFromDb(userId, from, count);
+        }
+        return page;
+    }
+
+    /**
+     * 推送到粉丝的收件箱，只写入活跃用户的收件箱，并裁剪到上限
+     */
+    public void push(List<Long> userIds, String blogId, long score) {
+        // 1、查询哪些粉丝是活跃用户
+        List<Object> activeAt = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long userId : userIds) {
+                conn.zScore(FEED_ACTIVE_KEY, userId.toString());
+            }
+            return null;
+        });
+        List<String> keys = new ArrayList<>(userIds.size());
+        for (int i = 0; i < userIds.size(); i++) {
+            if(activeAt.get(i) != null){
+                keys.add(FEED_KEY + userIds.get(i));
+            }
+        }
+        if(keys.isEmpty()){
+            return;
+        }
+        // 2、管道批量推送并裁剪 ZREMRANGEBYRANK key 0 -(maxSize + 1)
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String key : keys) {
+                conn.zAdd(key, score, blogId);
+                conn.zRemRange(key, 0, -(maxSize + 1));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 写入大V的发件箱，并裁剪到上限
+     */
+    public void pushOutbox(Long authorId, String blogId, long score) {
+        String key = FEED_OUTBOX_KEY + authorId;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.zAdd(key, score, blogId);
+            conn.zRemRange(key, 0, -(maxSize + 1));
+            return null;
+        });
+    }
+
+    /**
+     * 关注后异步把作者最近的笔记合并到收件箱，大V的笔记读取时从发件箱拉取，不需要合并
+     */
+    public void onFollow(Long userId, Long authorId) {
+        FEED_MAINTAIN_EXECUTOR.submit(() -> {
+            try {
+                backfill(userId, authorId);
+            } catch (Exception e) {
+                log.warn("合并关注作者的笔记失败，userId：{}，authorId：{}", userId, authorId, e);
+            }
+        });
+    }
+
+    /**
+     * 取关后异步从收件箱删除该作者的笔记
+     */
+    public void onUnfollow(Long userId, Long authorId) {
+        FEED_MAINTAIN_EXECUTOR.submit(() -> {
+            try {
+                removeAuthor(userId, authorId);
+            } catch (Exception e) {
+                log.warn("删除取关作者的笔记失败，userId：{}，authorId：{}", userId, authorId, e);
+            }
+        });
+    }
+
+    private void backfill(Long userId, Long authorId) {
+        // 1、不活跃用户的收件箱读取时会整体重建
+        if(stringRedisTemplate.opsForZSet().score(FEED_ACTIVE_KEY, userId.toString()) == null
+                || Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(FEED_BIGV_KEY, authorId.toString()))){
+            return;
+        }
+        // 2、作者最近的笔记 select id, create_time from tb_blog where user_id = ? order by create_time desc, id desc limit ?
+        List<Blog> blogs = blogMapper.selectList(new QueryWrapper<Blog>()
+                .select("id", "create_time")
+                .eq("user_id", authorId)
+                .orderByDesc("create_time", "id")
+                .last("LIMIT " + backfillSize));
+        if(blogs.isEmpty()){
+            return;
+        }
+        Set<StringTuple> tuples = new HashSet<>(blogs.size());
+        for (Blog blog : blogs) {
+            tuples.add(new DefaultStringTuple(blog.getId().toString(), ScrollCursor.toScore(blog.getCreateTime())));
+        }
+        // 3、一次 ZADD 写入并裁剪
+        String key = FEED_KEY + userId;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.zAdd(key, tuples);
+            conn.zRemRange(key, 0, -(maxSize + 1));
+            return null;
+        });
+    }
+
+    private void removeAuthor(Long userId, Long authorId) {
+        // 收件箱最多保留 maxSize 条，其中该作者的笔记一定在作者最近的 maxSize 篇之内
+        List<Object> ids = blogMapper.selectObjs(new QueryWrapper<Blog>()
+                .select("id")
+                .eq("user_id", authorId)
+                .orderByDesc("create_time", "id")
+                .last("LIMIT " + maxSize));
+        if(ids.isEmpty()){
+            return;
+        }
+        stringRedisTemplate.opsForZSet().remove(FEED_KEY + userId, ids.stream().map(Object::toString).toArray());
+    }
+
+    // 标记收件箱重建中并异步重建，失败时移出活跃集合，下次读取时重新重建
+    private void scheduleRebuild(Long userId) {
+        String rebuildKey = FEED_REBUILD_KEY + userId;
+        stringRedisTemplate.opsForValue().set(rebuildKey, "1", FEED_REBUILD_TTL, TimeUnit.SECONDS);
+        FEED_MAINTAIN_EXECUTOR.submit(() -> {
+            try {
+                rebuild(userId);
+            } catch (Exception e) {
+                log.warn("重建收件箱失败，userId：{}", userId, e);
+                stringRedisTemplate.opsForZSet().remove(FEED_ACTIVE_KEY, userId.toString());
+            } finally {
+                stringRedisTemplate.delete(rebuildKey);
+            }
+        });
+    }
+
+    // 从MySQL重建收件箱：关注的非大V作者最新的 maxSize 篇笔记
+    private void rebuild(Long userId) {
+        List<Long> authorIds = queryFolloweeIds(userId);
+        Set<String> bigVs = stringRedisTemplate.opsForSet().intersect(FOLLOWS_KEY + userId, FEED_BIGV_KEY);
+        if(bigVs != null){
+            authorIds.removeIf(id -> bigVs.contains(id.toString()));
+        }
+        List<Blog> blogs = authorIds.isEmpty() ? Collections.emptyList() : blogMapper.selectList(new QueryWrapper<Blog>()
+                .select("id", "create_time")
+                .in("user_id", authorIds)
+                .orderByDesc("create_time", "id")
+                .last("LIMIT " + maxSize));
+        Set<StringTuple> tuples = new HashSet<>(blogs.size());
+        for (Blog blog : blogs) {
+            tuples.add(new DefaultStringTuple(blog.getId().toString(), ScrollCursor.toScore(blog.getCreateTime())));
+        }
+        if(tuples.isEmpty()){
+            return;
+        }
+        // 用户已加入活跃集合，重建期间可能有新推送，合并写入而不是覆盖
+        String key = FEED_KEY + userId;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.zAdd(key, tuples);
+            conn.zRemRange(key, 0, -(maxSize + 1));
+            return null;
+        });
+    }
+
+    // 从MySQL查询关注的所有作者的笔记，排序与Redis一致：创建时间倒序，相同时id倒序
+    private List<TypedTuple<String>> readFromDb(Long userId, ScrollCursor from, int count) {
+        List<Long> authorIds = queryFolloweeIds(userId);
+        if(authorIds.isEmpty()){
+            return Collections.emptyList();
+        }
+        // select id, create_time from tb_blog where user_id in (..) and (create_time < ? or (create_time = ? and id < ?))
+        // order by create_time desc, id desc limit count
+        QueryWrapper<Blog> wrapper = new QueryWrapper<Blog>()
+                .select("id", "create_time")
+                .in("user_id", authorIds);
+        if(from != null){
+            LocalDateTime time = ScrollCursor.toTime(from.getScore());
+            wrapper.and(w -> w.lt("create_time", time).or(o -> o.eq("create_time", time).lt("id", from.getId())));
+        }
+        List<Blog> blogs = blogMapper.selectList(wrapper
+                .orderByDesc("create_time", "id")
+                .last("LIMIT " + count));
+        return blogs.stream()
+                .map(blog -> new DefaultTypedTuple<>(blog.getId().toString(), (double) ScrollCursor.toScore(blog.getCreateTime())))
+                .collect(Collectors.toList());
+    }
+
+    // select follow_user_id from tb_follow where user_id = ?
+    private List<Long> queryFolloweeIds(Long userId) {
+        return followMapper.selectList(new QueryWrapper<Follow>()
+                        .select("follow_user_id")
+                        .eq("user_id", userId))
+                .stream()
+                .map(Follow::getFollowUserId)
+                .collect(Collectors.toList());
+    }
+
+    // 删除长时间未读取的收件箱
+    private void evictIdle() {
+        long deadline = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(idleDays);
+        try {
+            while(!Thread.currentThread().isInterrupted()){
+                // 1、ZRANGEBYSCORE feed:active 0 deadline LIMIT 0 500
+                Set<String> idle = stringRedisTemplate.opsForZSet().rangeByScore(FEED_ACTIVE_KEY, 0, deadline, 0, EVICT_BATCH_SIZE);
+                if(idle == null || idle.isEmpty()){
+                    return;
+                }
+                // 2、删除收件箱，并移出活跃集合
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (String userId : idle) {
+                        conn.del(FEED_KEY + userId);
+                    }
+                    conn.zRem(FEED_ACTIVE_KEY, idle.toArray(new String[0]));
+                    return null;
+                });
+                log.debug("清理不活跃用户的收件箱{}个", idle.size());
+            }
+        } catch (Exception e) {
+            log.warn("清理收件箱失败", e);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 多个按分数（时间戳）倒序排列的收件箱/发件箱的多路归并，顺序与 {@link ScrollCursor#ORDER} 一致
+ */
+public class FeedMerger {
+
+    private FeedMerger() {
+    }
+
+    /**
+     * 归并后取前 count 条
+     * @param sources 每个来源都已按 {@link ScrollCursor#ORDER} 排列，且至少包含前 count 条
+     */
+    public static List<TypedTuple<String>> merge(Collection<? extends Collection<TypedTuple<String>>> sources, int count) {
+        // 1、每个来源的当前元素放入堆中
+        PriorityQueue<Head> heap = new PriorityQueue<>(Math.max(1, sources.size()),
+                (a, b) -> ScrollCursor.ORDER.compare(a.current, b.current));
+        for (Collection<TypedTuple<String>> source : sources) {
+            if(source == null || source.isEmpty()){
+                continue;
+            }
+            Iterator<TypedTuple<String>> it = source.iterator();
+            heap.add(new Head(it.next(), it));
+        }
+        // 2、依次取出最大的元素，并补充该来源的下一个元素
+        List<TypedTuple<String>> page = new ArrayList<>(count);
+        while(!heap.isEmpty() && page.size() < count){
+            Head head = heap.poll();
+            page.add(head.current);
+            if(head.rest.hasNext()){
+                head.current = head.rest.next();
+                heap.add(head);
+            }
+        }
+        return page;
+    }
+
+    private static class Head {
+        private TypedTuple<String> current;
+        private final Iterator<TypedTuple<String>> rest;
+
+        private Head(TypedTuple<String> current, Iterator<TypedTuple<String>> rest) {
+            this.current = current;
+            this.rest = rest;
+        }
+    }
+}
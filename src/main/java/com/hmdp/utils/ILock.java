@@ -9,6 +9,14 @@ public interface ILock {
      */
     boolean tryLock(long timeoutSec);
 
+    /**
+     * 尝试获取锁，失败时等待锁释放通知后重试，直到成功或超时
+     * @param waitMillis 最长等待时间（毫秒）
+     * @param timeoutSec 所持有的超时时间，过期后自动释放
+     * @return true 代表获取锁成功； false 代表等待超时；
+     */
+    boolean tryLock(long waitMillis, long timeoutSec);
+
     /**
      * 释放锁
      */
@@ -0,0 +1,63 @@
+package com.hmdp.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 记录获取锁的耗时、成功与否，以及持有锁的时间
+ */
+public class InstrumentedLock implements ILock {
+
+    private final String name;
+    private final ILock delegate;
+    private final LockMetrics metrics;
+
+    // 线程id -> {重入次数, 第一次获取锁的时间}
+    private final Map<Long, long[]> holds = new ConcurrentHashMap<>();
+
+    public InstrumentedLock(String name, ILock delegate, LockMetrics metrics) {
+        this.name = name;
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean tryLock(long timeoutSec) {
+        long start = System.nanoTime();
+        boolean success = delegate.tryLock(timeoutSec);
+        afterAcquire(start, success);
+        return success;
+    }
+
+    @Override
+    public boolean tryLock(long waitMillis, long timeoutSec) {
+        long start = System.nanoTime();
+        boolean success = delegate.tryLock(waitMillis, timeoutSec);
+        afterAcquire(start, success);
+        return success;
+    }
+
+    @Override
+    public void unlock() {
+        try {
+            delegate.unlock();
+        } finally {
+            long threadId = Thread.currentThread().getId();
+            long[] hold = holds.get(threadId);
+            if(hold != null && --hold[0] == 0){
+                holds.remove(threadId);
+                metrics.recordHold(name, System.nanoTime() - hold[1]);
+            }
+        }
+    }
+
+    private void afterAcquire(long start, boolean success) {
+        long now = System.nanoTime();
+        metrics.recordAcquire(name, now - start, success);
+        if(success){
+            // 只在第一次获取时记录开始时间，重入不重新计时
+            long[] hold = holds.computeIfAbsent(Thread.currentThread().getId(), k -> new long[]{0, now});
+            hold[0]++;
+        }
+    }
+}
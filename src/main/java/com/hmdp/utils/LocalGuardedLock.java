@@ -0,0 +1,113 @@
+package com.hmdp.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 在分布式锁前加一层JVM内的本地锁
+ * <p>
+ * 同一个JVM内竞争同一把锁的线程，只有拿到本地锁的那个线程才会去Redis竞争，
+ * 其余线程直接失败，不产生Redis请求。竞争期间Redis上的加锁请求数与节点数成正比，而不是与线程数成正比。
+ * 本地锁按锁名精确区分（引用计数，无人使用时移除），不同的锁之间不会互相影响。
+ * </p>
+ */
+public class LocalGuardedLock implements ILock {
+
+    // 锁名 -> 本地锁
+    private static final Map<String, LocalGuard> GUARDS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final ILock delegate;
+
+    public LocalGuardedLock(String name, ILock delegate) {
+        this.name = name;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean tryLock(long timeoutSec) {
+        // 1、获取本地锁，失败说明本机已有线程在持有或竞争这把锁
+        LocalGuard guard = acquireGuard();
+        if(!guard.lock.tryLock()){
+            releaseGuard();
+            return false;
+        }
+        // 2、获取分布式锁
+        boolean success = false;
+        try {
+            success = delegate.tryLock(timeoutSec);
+        } finally {
+            if(!success){
+                guard.lock.unlock();
+                releaseGuard();
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public boolean tryLock(long waitMillis, long timeoutSec) {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        // 1、在本地锁上排队，本机同一时间只有一个线程等待分布式锁
+        LocalGuard guard = acquireGuard();
+        boolean locked = false;
+        try {
+            locked = guard.lock.tryLock(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(!locked){
+            releaseGuard();
+            return false;
+        }
+        // 2、用剩余的时间等待分布式锁
+        boolean success = false;
+        try {
+            success = delegate.tryLock(Math.max(0, deadline - System.currentTimeMillis()), timeoutSec);
+        } finally {
+            if(!success){
+                guard.lock.unlock();
+                releaseGuard();
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public void unlock() {
+        // 先释放分布式锁，再释放本地锁
+        try {
+            delegate.unlock();
+        } finally {
+            LocalGuard guard = GUARDS.get(name);
+            if(guard != null && guard.lock.isHeldByCurrentThread()){
+                guard.lock.unlock();
+                releaseGuard();
+            }
+        }
+    }
+
+    // 引用计数 +1，每次持有（包括重入）和每个竞争中的线程各占一个引用
+    private LocalGuard acquireGuard() {
+        return GUARDS.compute(name, (k, guard) -> {
+            if(guard == null){
+                guard = new LocalGuard();
+            }
+            guard.refs++;
+            return guard;
+        });
+    }
+
+    // 引用计数 -1，为0时移除
+    private void releaseGuard() {
+        GUARDS.computeIfPresent(name, (k, guard) -> --guard.refs == 0 ? null : guard);
+    }
+
+    private static class LocalGuard {
+        private final ReentrantLock lock = new ReentrantLock();
+        // 只在 compute 中修改
+        private int refs;
+    }
+}
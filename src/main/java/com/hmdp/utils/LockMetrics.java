@@ -0,0 +1,214 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.LockStatsDTO;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * 分布式锁的统计：获取锁的耗时、失败率、持有时间的直方图，以及竞争最激烈的锁
+ * <p>
+ * 按锁名模式聚合（锁名中的数字id替换为 *，如 lock:shop:1 记为 lock:shop:*），避免为每个id单独统计。
+ * 竞争最激烈的锁按具体锁名统计失败次数，每分钟滚动一次，只保留当前和上一分钟的数据。
+ * </p>
+ */
+@Component
+public class LockMetrics {
+
+    // 直方图桶的上界（毫秒），最后一个桶为 +Inf
+    private static final long[] BUCKET_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+    // 每分钟最多统计的具体锁名数量
+    private static final int MAX_CONTENDED_KEYS = 10000;
+    private static final Pattern ID_PATTERN = Pattern.compile("\\d+");
+
+    // 锁名模式 -> 统计
+    private final Map<String, LockStats> statsMap = new ConcurrentHashMap<>();
+
+    // 具体锁名 -> 获取失败次数
+    private volatile Map<String, LongAdder> contended = new ConcurrentHashMap<>();
+    private volatile Map<String, LongAdder> lastContended = new HashMap<>();
+
+    private final ScheduledExecutorService rollExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    public LockMetrics() {
+        rollExecutor.scheduleAtFixedRate(() -> {
+            lastContended = contended;
+            contended = new ConcurrentHashMap<>();
+        }, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    private void destroy(){
+        rollExecutor.shutdownNow();
+    }
+
+    /**
+     * 包装锁，记录获取和持有锁的统计
+     * @param name 锁名
+     * @param lock 被包装的锁
+     * @return 带统计的锁
+     */
+    public ILock instrument(String name, ILock lock) {
+        return new InstrumentedLock(name, lock, this);
+    }
+
+    public void recordAcquire(String name, long nanos, boolean success) {
+        LockStats stats = stats(name);
+        stats.attempts.increment();
+        stats.acquire.record(nanos);
+        if(!success){
+            stats.failures.increment();
+            Map<String, LongAdder> current = contended;
+            LongAdder counter = current.get(name);
+            if(counter == null && current.size() < MAX_CONTENDED_KEYS){
+                counter = current.computeIfAbsent(name, k -> new LongAdder());
+            }
+            if(counter != null){
+                counter.increment();
+            }
+        }
+    }
+
+    public void recordHold(String name, long nanos) {
+        stats(name).hold.record(nanos);
+    }
+
+    /**
+     * 各个锁名模式的统计
+     */
+    public List<LockStatsDTO> snapshot() {
+        List<LockStatsDTO> list = new ArrayList<>(statsMap.size());
+        statsMap.forEach((name, stats) -> list.add(stats.toDTO(name)));
+        list.sort(Comparator.comparing(LockStatsDTO::getFailures).reversed());
+        return list;
+    }
+
+    /**
+     * 最近一到两分钟内获取失败次数最多的锁
+     * @param limit 返回的数量
+     * @return 锁名 -> 失败次数，按失败次数倒序
+     */
+    public Map<String, Long> topContended(int limit) {
+        Map<String, Long> merged = new HashMap<>();
+        lastContended.forEach((k, v) -> merged.merge(k, v.sum(), Long::sum));
+        contended.forEach((k, v) -> merged.merge(k, v.sum(), Long::sum));
+        Map<String, Long> top = new LinkedHashMap<>();
+        merged.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(limit)
+                .forEach(e -> top.put(e.getKey(), e.getValue()));
+        return top;
+    }
+
+    private LockStats stats(String name) {
+        return statsMap.computeIfAbsent(ID_PATTERN.matcher(name).replaceAll("*"), k -> new LockStats());
+    }
+
+    private static class LockStats {
+        private final LongAdder attempts = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final Histogram acquire = new Histogram();
+        private final Histogram hold = new Histogram();
+
+        private LockStatsDTO toDTO(String name) {
+            LockStatsDTO dto = new LockStatsDTO();
+            long attemptCount = attempts.sum();
+            long failureCount = failures.sum();
+            dto.setName(name);
+            dto.setAttempts(attemptCount);
+            dto.setFailures(failureCount);
+            dto.setFailureRate(attemptCount == 0 ? 0 : (double) failureCount / attemptCount);
+            dto.setAcquireAvgMillis(acquire.avgMillis());
+            dto.setAcquireP99Millis(acquire.percentileMillis(0.99));
+            dto.setAcquireMaxMillis(acquire.maxMillis());
+            dto.setAcquireHistogram(acquire.buckets());
+            dto.setHoldAvgMillis(hold.avgMillis());
+            dto.setHoldP99Millis(hold.percentileMillis(0.99));
+            dto.setHoldMaxMillis(hold.maxMillis());
+            dto.setHoldHistogram(hold.buckets());
+            return dto;
+        }
+    }
+
+    /**
+     * 固定桶的直方图，分位数取所在桶的上界
+     */
+    private static class Histogram {
+        private final LongAdder[] counts = new LongAdder[BUCKET_BOUNDS.length + 1];
+        private final LongAdder sumNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private Histogram() {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        private void record(long nanos) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int i = 0;
+            while(i < BUCKET_BOUNDS.length && millis > BUCKET_BOUNDS[i]){
+                i++;
+            }
+            counts[i].increment();
+            sumNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        private long total() {
+            long total = 0;
+            for (LongAdder count : counts) {
+                total += count.sum();
+            }
+            return total;
+        }
+
+        private double avgMillis() {
+            long total = total();
+            return total == 0 ? 0 : sumNanos.sum() / 1e6 / total;
+        }
+
+        private long maxMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+        }
+
+        private long percentileMillis(double p) {
+            long total = total();
+            if(total == 0){
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * p);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                seen += counts[i].sum();
+                if(seen >= rank){
+                    return BUCKET_BOUNDS[i];
+                }
+            }
+            // 落在最后一个桶，用最大值代替
+            return maxMillis();
+        }
+
+        private Map<String, Long> buckets() {
+            Map<String, Long> buckets = new LinkedHashMap<>();
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                buckets.put(String.valueOf(BUCKET_BOUNDS[i]), counts[i].sum());
+            }
+            buckets.put("+Inf", counts[BUCKET_BOUNDS.length].sum());
+            return buckets;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static com.hmdp.utils.RedisConstants.LOCK_RELEASE_CHANNEL;
+
+/**
+ * 锁释放通知
+ * <p>
+ * 释放锁的脚本在 lock:release 频道上发布锁的key，本节点所有等待锁的线程共用一个订阅，
+ * 收到通知后立即重试获取锁，不需要休眠轮询Redis。
+ * 锁过期自动释放时不会发布通知，订阅断开期间也可能丢失通知，因此每次最多等待 MAX_WAIT_SLICE_MILLIS 后重试一次。
+ * </p>
+ */
+@Component
+public class LockReleaseNotifier implements MessageListener {
+
+    // 单次等待的最长时间
+    private static final long MAX_WAIT_SLICE_MILLIS = 1000;
+
+    // 锁的key -> 等待该锁的线程
+    private final Map<String, Waiters> waitersMap = new ConcurrentHashMap<>();
+
+    private final RedisMessageListenerContainer container;
+
+    public LockReleaseNotifier(RedisMessageListenerContainer container) {
+        this.container = container;
+    }
+
+    @PostConstruct
+    private void init(){
+        container.addMessageListener(this, new ChannelTopic(LOCK_RELEASE_CHANNEL));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        signal(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 唤醒等待该锁的线程
+     * @param key 锁的key
+     */
+    public void signal(String key) {
+        Waiters waiters = waitersMap.get(key);
+        if(waiters != null){
+            synchronized (waiters) {
+                waiters.generation++;
+                waiters.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 反复尝试获取锁，每次失败后等待锁释放通知，直到成功或超时
+     * @param key 锁的key
+     * @param waitMillis 最长等待时间
+     * @param attempt 获取锁的操作
+     * @return true 代表获取锁成功； false 代表等待超时；
+     */
+    public boolean await(String key, long waitMillis, BooleanSupplier attempt) {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        Waiters waiters = register(key);
+        try {
+            while(true){
+                // 1、先记录通知的版本再尝试，尝试失败后到开始等待之间的通知不会丢失
+                long generation;
+                synchronized (waiters) {
+                    generation = waiters.generation;
+                }
+                if(attempt.getAsBoolean()){
+                    return true;
+                }
+                // 2、等待通知或超时
+                long remaining = deadline - System.currentTimeMillis();
+                if(remaining <= 0){
+                    return false;
+                }
+                long waitUntil = System.currentTimeMillis() + Math.min(remaining, MAX_WAIT_SLICE_MILLIS);
+                synchronized (waiters) {
+                    long left;
+                    while(waiters.generation == generation && (left = waitUntil - System.currentTimeMillis()) > 0){
+                        waiters.wait(left);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            unregister(key);
+        }
+    }
+
+    private Waiters register(String key) {
+        return waitersMap.compute(key, (k, waiters) -> {
+            if(waiters == null){
+                waiters = new Waiters();
+            }
+            waiters.refs++;
+            return waiters;
+        });
+    }
+
+    private void unregister(String key) {
+        waitersMap.computeIfPresent(key, (k, waiters) -> --waiters.refs == 0 ? null : waiters);
+    }
+
+    private static class Waiters {
+        // 收到的通知数，只在持有监视器时读写
+        private long generation;
+        // 等待的线程数，只在 compute 中修改
+        private int refs;
+    }
+}
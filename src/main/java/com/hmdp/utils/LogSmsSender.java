@@ -0,0 +1,19 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * 本地开发使用，以日志的形式代替短信发送
+ */
+@Slf4j
+public class LogSmsSender implements SmsSender {
+
+    @Override
+    public void send(List<SmsMessage> messages) {
+        for (SmsMessage message : messages) {
+            log.debug("发送短信验证码成功，手机号：{}，验证码：{}", message.getPhone(), message.getCode());
+        }
+    }
+}
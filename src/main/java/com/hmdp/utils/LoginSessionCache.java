@@ -0,0 +1,143 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_INVALIDATE_CHANNEL;
+
+/**
+ * 登录用户的本地缓存，token -> 用户，短时间内的请求不必每次都查询Redis
+ * <p>
+ * 缓存有效期很短且有数量上限。登出或用户信息变更时，通过 login:invalidate 频道通知所有节点删除缓存，
+ * 消息格式为 token:{token} 或 user:{userId}。
+ * </p>
+ */
+@Slf4j
+@Component
+public class LoginSessionCache implements MessageListener {
+
+    // 本地缓存有效期
+    private static final long CACHE_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    // 最多缓存的token数量
+    private static final int MAX_SIZE = 100000;
+
+    private static final String TOKEN_PREFIX = "token:";
+    private static final String USER_PREFIX = "user:";
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer container;
+
+    public LoginSessionCache(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer container) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.container = container;
+    }
+
+    @PostConstruct
+    private void init(){
+        container.addMessageListener(this, new ChannelTopic(LOGIN_INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 查询缓存的用户
+     * @param token 登录令牌
+     * @return 用户，未缓存或已过期时返回null
+     */
+    public UserDTO get(String token) {
+        Entry entry = cache.get(token);
+        if(entry == null){
+            return null;
+        }
+        if(entry.expireAt < System.currentTimeMillis()){
+            cache.remove(token, entry);
+            return null;
+        }
+        return entry.user;
+    }
+
+    public void put(String token, UserDTO user) {
+        if(cache.size() >= MAX_SIZE){
+            evict();
+        }
+        cache.put(token, new Entry(user, System.currentTimeMillis() + CACHE_TTL_MILLIS));
+    }
+
+    /**
+     * 删除所有节点上该token的缓存
+     */
+    public void invalidateToken(String token) {
+        cache.remove(token);
+        publish(TOKEN_PREFIX + token);
+    }
+
+    /**
+     * 删除所有节点上该用户所有token的缓存，用户信息变更后调用
+     */
+    public void invalidateUser(Long userId) {
+        removeUser(userId);
+        publish(USER_PREFIX + userId);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        if(body.startsWith(TOKEN_PREFIX)){
+            cache.remove(body.substring(TOKEN_PREFIX.length()));
+        }else if(body.startsWith(USER_PREFIX)){
+            try {
+                removeUser(Long.valueOf(body.substring(USER_PREFIX.length())));
+            } catch (NumberFormatException e) {
+                log.warn("无效的登录缓存失效消息：{}", body);
+            }
+        }
+    }
+
+    private void publish(String message) {
+        try {
+            stringRedisTemplate.convertAndSend(LOGIN_INVALIDATE_CHANNEL, message);
+        } catch (Exception e) {
+            // 其他节点的缓存最多在有效期后失效
+            log.warn("发送登录缓存失效消息失败：{}", message, e);
+        }
+    }
+
+    private void removeUser(Long userId) {
+        cache.values().removeIf(entry -> userId.equals(entry.user.getId()));
+    }
+
+    // 缓存已满，先删除过期的，仍然超过上限时任意删除十分之一
+    private void evict() {
+        long now = System.currentTimeMillis();
+        cache.values().removeIf(entry -> entry.expireAt < now);
+        int toRemove = cache.size() - MAX_SIZE + MAX_SIZE / 10;
+        Iterator<Entry> it = cache.values().iterator();
+        while(toRemove-- > 0 && it.hasNext()){
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static class Entry {
+        private final UserDTO user;
+        private final long expireAt;
+
+        private Entry(UserDTO user, long expireAt) {
+            this.user = user;
+            this.expireAt = expireAt;
+        }
+    }
+}
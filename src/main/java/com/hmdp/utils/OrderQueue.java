@@ -0,0 +1,30 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.VoucherOrder;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 秒杀订单队列，由 hmdp.order-queue.type 选择具体实现
+ */
+public interface OrderQueue {
+
+    /**
+     * 秒杀脚本是否在扣减库存的同时把订单写入了队列
+     * @return true 代表脚本已写入，无需再调用 {@link #offer}
+     */
+    boolean enqueuedByScript();
+
+    /**
+     * 订单写入队列
+     * @param voucherOrder 订单
+     */
+    void offer(VoucherOrder voucherOrder);
+
+    /**
+     * 启动后台消费者，批量处理队列中的订单
+     * @param handler 订单处理逻辑，抛出异常代表这一批订单需要重新处理，因此必须是幂等的
+     */
+    void start(Consumer<List<VoucherOrder>> handler);
+}
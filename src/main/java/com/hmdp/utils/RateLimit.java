@@ -0,0 +1,45 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 接口限流注解，由 {@link RateLimitInterceptor} 基于 Redis 令牌桶实现
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimit {
+
+    /**
+     * 限流的资源名称，默认使用 类名.方法名
+     */
+    String key() default "";
+
+    /**
+     * 限流维度
+     */
+    LimitType type() default LimitType.IP;
+
+    /**
+     * 令牌桶容量，即允许的突发请求数
+     */
+    int capacity();
+
+    /**
+     * 每秒生成的令牌数
+     */
+    double rate();
+
+    enum LimitType {
+        /**
+         * 按登录用户限流，未登录时退化为按IP限流
+         */
+        USER,
+        /**
+         * 按客户端IP限流
+         */
+        IP
+    }
+}
@@ -0,0 +1,153 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.RATE_LIMIT_KEY;
+
+@Slf4j
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    // 本地预检缓存的最大条目数
+    private static final int LOCAL_BLOCK_MAX_SIZE = 10000;
+
+    private static final DefaultRedisScript<Long> RATE_LIMIT_SCRIPT;
+
+    static{
+        RATE_LIMIT_SCRIPT=new DefaultRedisScript<>();
+        // 设置lua脚本地址为rate_limit.lua
+        RATE_LIMIT_SCRIPT.setLocation(new ClassPathResource("rate_limit.lua"));
+        // 设置返回值类型为Long
+        RATE_LIMIT_SCRIPT.setResultType(Long.class);
+    }
+
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 可信的反向代理地址，只有来自这些地址的请求才读取 X-Forwarded-For
+    private final Set<String> trustedProxies;
+
+    // 本地预检缓存：限流key -> 令牌桶下次有令牌的时间（毫秒），在此之前的请求无需访问Redis直接拒绝
+    private final Map<String, Long> blockedUntil = new ConcurrentHashMap<>();
+
+    public RateLimitInterceptor(StringRedisTemplate stringRedisTemplate, Set<String> trustedProxies){
+        this.stringRedisTemplate=stringRedisTemplate;
+        this.trustedProxies=trustedProxies;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 1、判断接口是否需要限流
+        if(!(handler instanceof HandlerMethod)){
+            return true;
+        }
+        HandlerMethod handlerMethod = (HandlerMethod) handler;
+        RateLimit rateLimit = handlerMethod.getMethodAnnotation(RateLimit.class);
+        if(rateLimit == null){
+            return true;
+        }
+
+        // 2、拼接限流key：前缀 + 资源 + 用户或IP
+        String key = RATE_LIMIT_KEY + resourceOf(rateLimit, handlerMethod) + ":" + subjectOf(rateLimit, request);
+
+        // 3、本地预检，明显超限的客户端直接拒绝
+        long now = System.currentTimeMillis();
+        Long until = blockedUntil.get(key);
+        if(until != null){
+            if(until > now){
+                return reject(response);
+            }
+            blockedUntil.remove(key, until);
+        }
+
+        // 4、执行lua脚本，原子地从令牌桶中获取令牌
+        Long wait = stringRedisTemplate.execute(
+                RATE_LIMIT_SCRIPT,
+                Collections.singletonList(key),
+                String.valueOf(rateLimit.capacity()), String.valueOf(rateLimit.rate()), "1"
+        );
+
+        // 5、返回0代表获取令牌成功，放行
+        if(wait == null || wait == 0){
+            return true;
+        }
+
+        // 6、获取失败，记录到本地预检缓存，在令牌补充前不再访问Redis
+        if(blockedUntil.size() >= LOCAL_BLOCK_MAX_SIZE){
+            evictExpired(now);
+        }
+        blockedUntil.put(key, now + wait);
+        return reject(response);
+    }
+
+    private String resourceOf(RateLimit rateLimit, HandlerMethod handlerMethod) {
+        if(!rateLimit.key().isEmpty()){
+            return rateLimit.key();
+        }
+        return handlerMethod.getBeanType().getSimpleName() + "." + handlerMethod.getMethod().getName();
+    }
+
+    private String subjectOf(RateLimit rateLimit, HttpServletRequest request) {
+        if(rateLimit.type() == RateLimit.LimitType.USER){
+            UserDTO user = UserHolder.getUser();
+            if(user != null){
+                return "user:" + user.getId();
+            }
+        }
+        return "ip:" + clientIpOf(request);
+    }
+
+    /**
+     * 客户端IP：默认使用连接的对端地址，客户端可以任意设置的请求头不可信；
+     * 只有请求来自可信代理时，才从 X-Forwarded-For 末尾向前找到第一个不是可信代理的地址
+     */
+    private String clientIpOf(HttpServletRequest request) {
+        String remoteAddr = request.getRemoteAddr();
+        if(!trustedProxies.contains(remoteAddr)){
+            return remoteAddr;
+        }
+        String forwardedFor = request.getHeader("X-Forwarded-For");
+        if(StrUtil.isBlank(forwardedFor)){
+            return remoteAddr;
+        }
+        String[] hops = forwardedFor.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if(!hop.isEmpty() && !trustedProxies.contains(hop)){
+                return hop;
+            }
+        }
+        return remoteAddr;
+    }
+
+    private void evictExpired(long now) {
+        blockedUntil.entrySet().removeIf(entry -> entry.getValue() <= now);
+        if(blockedUntil.size() >= LOCAL_BLOCK_MAX_SIZE){
+            // 仍然过多，说明遭受大量不同来源的请求，直接清空，交由Redis判断
+            blockedUntil.clear();
+        }
+    }
+
+    private boolean reject(HttpServletResponse response) throws Exception {
+        // 设置状态码 429 Too Many Requests
+        response.setStatus(429);
+        response.setContentType("application/json;charset=UTF-8");
+        response.getWriter().write(JSONUtil.toJsonStr(Result.fail("请求过于频繁，请稍后再试")));
+        // 拦截
+        return false;
+    }
+}
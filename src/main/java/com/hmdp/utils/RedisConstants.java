@@ -3,8 +3,14 @@ package com.hmdp.utils;
 public class RedisConstants {
     public static final String LOGIN_CODE_KEY = "login:code:";
     public static final Long LOGIN_CODE_TTL = 2L;
+    public static final String SMS_COOLDOWN_KEY = "sms:cooldown:";
+    public static final Long SMS_COOLDOWN_TTL = 60L;
+    public static final String SMS_DAILY_KEY = "sms:daily:";
+    public static final Integer SMS_DAILY_MAX = 10;
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 36000L;
+    public static final String LOGIN_INVALIDATE_CHANNEL = "login:invalidate";
+    public static final String LOGIN_REVOKED_KEY = "login:revoked";
 
     public static final Long CACHE_NULL_TTL = 2L;
 
@@ -12,14 +18,35 @@ public class RedisConstants {
     public static final String CACHE_SHOP_KEY = "cache:shop:";
     public static final String CACHE_SHOP_TYPE_KEY = "cache:shop-type:";
     public static final Long CACHE_SHOP_TYPE_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+    public static final Long CACHE_USER_TTL = 30L;
 
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    public static final Long LOCK_SHOP_WAIT_MILLIS = 3000L;
+    public static final String LOCK_RELEASE_CHANNEL = "lock:release";
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    public static final String BLOG_LIKE_COUNT_KEY = "blog:like:count";
+    public static final String BLOG_LIKE_DIRTY_KEY = "blog:like:dirty";
+    public static final String BLOG_HOT_KEY = "blog:hot";
+    public static final String BLOG_HOT_EPOCH_KEY = "blog:hot:epoch";
     public static final String FEED_KEY = "feed:";
+    public static final String FEED_OUTBOX_KEY = "feed:outbox:";
+    public static final String FEED_BIGV_KEY = "feed:bigv";
+    public static final String FEED_ACTIVE_KEY = "feed:active";
+    public static final String FEED_FANOUT_PROGRESS_KEY = "feed:fanout:";
+    public static final Long FEED_FANOUT_PROGRESS_TTL = 24L;
+    public static final String FEED_REBUILD_KEY = "feed:rebuild:";
+    public static final Long FEED_REBUILD_TTL = 60L;
+    public static final String FOLLOWS_KEY = "follows:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
     public static final String USER_SIGN_KEY = "sign:";
+
+    public static final String RATE_LIMIT_KEY = "rate:limit:";
+
+    public static final String ID_WORKER_KEY = "id:worker:";
+    public static final Long ID_WORKER_TTL = 60L;
 }
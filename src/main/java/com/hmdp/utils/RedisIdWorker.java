@@ -1,12 +1,22 @@
 package com.hmdp.utils;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
-import javax.annotation.Resource;
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Component
 public class RedisIdWorker {
@@ -18,29 +28,232 @@ public class RedisIdWorker {
     // 序列号需要移动的位数
     private static final int COUNT_BIT=32;
 
+    // 号段模式下每次从Redis预留的序列号数量
+    private static final long SEGMENT_STEP=1000;
+
+    // 号段剩余不足该比例时，异步预取下一个号段
+    private static final double PREFETCH_RATIO=0.2;
+
+    private static final DateTimeFormatter DATE_FORMATTER=DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
+    // 号段预取线程池
+    private static final ExecutorService SEGMENT_PREFETCH_EXECUTOR = Executors.newSingleThreadExecutor();
+
     private StringRedisTemplate stringRedisTemplate;
 
-    public RedisIdWorker(StringRedisTemplate stringRedisTemplate) {
+    // 是否使用号段模式，否则每个id执行一次INCR；号段模式下同一秒内的id不再有序，重启时未用完的号段被丢弃
+    private final boolean segmentMode;
+
+    // 雪花算法模式，id在内存中生成，只在租用和续期机器号时访问Redis，时间戳与其他模式相同
+    private final SnowflakeIdWorker snowflake;
+
+    // 业务前缀 -> 号段缓冲
+    private final Map<String, SegmentBuffer> segmentBuffers = new ConcurrentHashMap<>();
+
+    // 当前日期缓存，避免每次生成id都格式化日期
+    private volatile Clock clock;
+
+    public RedisIdWorker(StringRedisTemplate stringRedisTemplate,
+                         @Value("${hmdp.id-worker.mode:incr}") String mode) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.segmentMode = "segment".equals(mode);
+        // 雪花算法使用相同的时间戳，切换模式后id仍然递增
+        this.snowflake = "snowflake".equals(mode)
+                ? new SnowflakeIdWorker(stringRedisTemplate, () -> currentClock().nowSecond() - BEGIN_TIMESTAMP)
+                : null;
+    }
+
+    @PreDestroy
+    private void destroy(){
+        SEGMENT_PREFETCH_EXECUTOR.shutdownNow();
+        if(snowflake != null){
+            snowflake.shutdown();
+        }
     }
 
     public long nextId(String keyPrefix){
+        // 雪花算法模式下id全局唯一，与业务前缀无关
+        if(snowflake != null){
+            return snowflake.nextId();
+        }
         // 1、生成时间戳
-        LocalDateTime now=LocalDateTime.now();
-        long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
+        Clock c = currentClock();
+        long nowSecond = c.nowSecond();
         long timestamp=nowSecond-BEGIN_TIMESTAMP;
 
         // 2、生成序列号
-        // 2.1、获取当前日期，精确到天
-        String date=now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-
-        // 2.2、自增长
-        long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        long count = segmentMode ? nextCountFromSegment(keyPrefix, c.date) : nextCountFromRedis(keyPrefix, c.date);
 
         // 3、拼接并返回
         return timestamp << COUNT_BIT | count;
     }
 
+    /**
+     * 批量生成id，一次INCRBY预留n个序列号，适用于批量写入
+     * @param keyPrefix 业务前缀
+     * @param n id数量
+     * @return n个递增的id
+     */
+    public long[] nextIds(String keyPrefix, int n){
+        if(n <= 0){
+            throw new IllegalArgumentException("id数量必须大于0：" + n);
+        }
+        long[] ids = new long[n];
+        if(snowflake != null){
+            snowflake.nextIds(ids);
+            return ids;
+        }
+        // 1、生成时间戳
+        Clock c = currentClock();
+        long timestamp = c.nowSecond() - BEGIN_TIMESTAMP;
+
+        // 2、预留n个序列号，号段模式下与号段共用同一个计数器，不会重复
+        Long end = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + c.date, n);
+        if(end == null){
+            throw new IllegalStateException("序列号分配失败：" + keyPrefix);
+        }
+
+        // 3、拼接
+        long count = end - n + 1;
+        for (int i = 0; i < n; i++) {
+            ids[i] = timestamp << COUNT_BIT | (count + i);
+        }
+        return ids;
+    }
+
+    private long nextCountFromRedis(String keyPrefix, String date) {
+        // 自增长
+        return stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+    }
+
+    private long nextCountFromSegment(String keyPrefix, String date) {
+        SegmentBuffer buffer = segmentBuffers.computeIfAbsent(keyPrefix, SegmentBuffer::new);
+        while(true){
+            // 1、从当前号段无锁获取序列号
+            Segment segment = buffer.current;
+            if(segment != null && segment.date.equals(date)){
+                long count = segment.cursor.getAndIncrement();
+                if(count < segment.end){
+                    // 1.1、到达预取点，异步预取下一个号段
+                    if(count == segment.prefetchAt){
+                        prefetch(buffer, date);
+                    }
+                    return count;
+                }
+            }
+            // 2、号段用完或者跨天，切换号段
+            synchronized (buffer) {
+                if(buffer.current == segment){
+                    buffer.current = takeNextSegment(buffer, date);
+                }
+            }
+        }
+    }
+
+    private Segment takeNextSegment(SegmentBuffer buffer, String date) {
+        // 优先使用预取好的号段，跨天时丢弃
+        CompletableFuture<Segment> next = buffer.next.getAndSet(null);
+        if(next != null){
+            try {
+                Segment segment = next.join();
+                if(segment.date.equals(date)){
+                    return segment;
+                }
+            } catch (Exception ignored) {
+                // 预取失败，同步获取
+            }
+        }
+        return allocateSegment(buffer.keyPrefix, date);
+    }
+
+    private void prefetch(SegmentBuffer buffer, String date) {
+        CompletableFuture<Segment> future = new CompletableFuture<>();
+        if(buffer.next.compareAndSet(null, future)){
+            SEGMENT_PREFETCH_EXECUTOR.submit(() -> {
+                try {
+                    future.complete(allocateSegment(buffer.keyPrefix, date));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        }
+    }
+
+    // 一次 INCRBY 预留 SEGMENT_STEP 个序列号
+    private Segment allocateSegment(String keyPrefix, String date) {
+        Long end = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date, SEGMENT_STEP);
+        if(end == null){
+            throw new IllegalStateException("号段分配失败：" + keyPrefix);
+        }
+        return new Segment(date, end - SEGMENT_STEP + 1, end + 1);
+    }
+
+    private Clock currentClock() {
+        Clock c = clock;
+        long nowMillis = System.currentTimeMillis();
+        if(c == null || nowMillis >= c.validUntilMillis){
+            c = Clock.create(nowMillis);
+            clock = c;
+        }
+        return c;
+    }
+
+    private static class SegmentBuffer {
+        private final String keyPrefix;
+        private volatile Segment current;
+        private final AtomicReference<CompletableFuture<Segment>> next = new AtomicReference<>();
+
+        private SegmentBuffer(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+    }
+
+    /**
+     * 号段 [start, end)
+     */
+    private static class Segment {
+        private final String date;
+        private final long end;
+        private final long prefetchAt;
+        private final AtomicLong cursor;
+
+        private Segment(String date, long start, long end) {
+            this.date = date;
+            this.end = end;
+            this.prefetchAt = end - (long) ((end - start) * PREFETCH_RATIO);
+            this.cursor = new AtomicLong(start);
+        }
+    }
+
+    /**
+     * 日期缓存，与原先 LocalDateTime.now() 的计算方式一致：本地时间按UTC换算成秒，
+     * 最多缓存一小时或到当天结束，以便感知时区偏移的变化
+     */
+    private static class Clock {
+        private final String date;
+        private final long offsetSeconds;
+        private final long validUntilMillis;
+
+        private Clock(String date, long offsetSeconds, long validUntilMillis) {
+            this.date = date;
+            this.offsetSeconds = offsetSeconds;
+            this.validUntilMillis = validUntilMillis;
+        }
+
+        private static Clock create(long nowMillis) {
+            ZoneId zone = ZoneId.systemDefault();
+            LocalDateTime now = LocalDateTime.now(zone);
+            long offsetSeconds = zone.getRules().getOffset(now).getTotalSeconds();
+            long nextDayMillis = LocalDate.from(now).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            long validUntil = Math.min(nextDayMillis, nowMillis + TimeUnit.HOURS.toMillis(1));
+            return new Clock(now.format(DATE_FORMATTER), offsetSeconds, validUntil);
+        }
+
+        private long nowSecond() {
+            return System.currentTimeMillis() / 1000 + offsetSeconds;
+        }
+    }
+
 //    public static void main(String[] args) {
 //        LocalDateTime time = LocalDateTime.of(2002, 1, 1, 0, 0, 0);
 //        //将时间转换为秒数
@@ -0,0 +1,35 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * 分布式锁工厂，获取的锁先竞争本地锁，再竞争可重入的Redis锁，并记录锁的统计
+ */
+@Component
+public class RedisLockFactory {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final LockReleaseNotifier releaseNotifier;
+
+    private final LockMetrics lockMetrics;
+
+    public RedisLockFactory(StringRedisTemplate stringRedisTemplate, LockReleaseNotifier releaseNotifier,
+                            LockMetrics lockMetrics) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.releaseNotifier = releaseNotifier;
+        this.lockMetrics = lockMetrics;
+    }
+
+    /**
+     * 获取锁
+     * @param name 锁名，Redis中的key为 lock:{name}
+     * @return 锁对象
+     */
+    public ILock getLock(String name) {
+        ILock lock = new LocalGuardedLock(name, new ReentrantRedisLock(name, stringRedisTemplate, releaseNotifier));
+        // 统计包在最外层，本地锁上的失败也计入竞争
+        return lockMetrics.instrument("lock:" + name, lock);
+    }
+}
@@ -0,0 +1,180 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.VoucherOrder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * 基于 Redis Stream 的订单队列，订单由秒杀脚本通过 XADD 写入，消费者组 g1 读取
+ * <p>
+ * 逐条处理并确认，同一条订单投递 MAX_DELIVERIES 次仍然失败，或者消息内容无法解析，
+ * 转入 stream.orders.dead 后确认，不再阻塞后续订单。死信中的订单已扣减Redis库存，需要人工核对后补单。
+ * </p>
+ */
+@Slf4j
+public class RedisStreamOrderQueue implements OrderQueue {
+
+    private static final String QUEUE_NAME = "stream.orders";
+    private static final String DEAD_LETTER_QUEUE_NAME = "stream.orders.dead";
+    private static final String GROUP_NAME = "g1";
+    // 每条订单最多投递的次数，超过后转入死信队列
+    private static final long MAX_DELIVERIES = 5;
+    // 每次最多读取的订单数
+    private static final int BATCH_SIZE = 50;
+
+    // 线程池
+    private static final ExecutorService ORDER_QUEUE_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public RedisStreamOrderQueue(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @Override
+    public boolean enqueuedByScript() {
+        return true;
+    }
+
+    @Override
+    public void offer(VoucherOrder voucherOrder) {
+        // XADD stream.orders * userId .. voucherId .. id ..
+        Map<String, String> values = new HashMap<>(4);
+        values.put("userId", voucherOrder.getUserId().toString());
+        values.put("voucherId", voucherOrder.getVoucherId().toString());
+        values.put("id", voucherOrder.getId().toString());
+        stringRedisTemplate.opsForStream().add(QUEUE_NAME, values);
+    }
+
+    @Override
+    public void start(Consumer<List<VoucherOrder>> handler) {
+        createGroupIfAbsent();
+        ORDER_QUEUE_EXECUTOR.submit(() -> {
+            // 先处理上次未确认的订单
+            handlePendingList(handler);
+            while(!Thread.currentThread().isInterrupted()){
+                try {
+                    // 1、获取消息队列中的订单信息 XREADGROUP GROUP g1 c1 COUNT 50 BLOCK 2000 STREAMS stream.orders >
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            org.springframework.data.redis.connection.stream.Consumer.from(GROUP_NAME, "c1"),
+                            StreamReadOptions.empty().count(BATCH_SIZE).block(Duration.ofSeconds(2)),
+                            StreamOffset.create(QUEUE_NAME, ReadOffset.lastConsumed())
+                    );
+                    // 2、判断消息获取是否成功
+                    if(list == null || list.isEmpty()) {
+                        // 2.1、如果获取失败，说明没有消息，继续下一次循环
+                        continue;
+                    }
+                    // 3、解析消息并处理
+                    handleRecords(list, handler);
+                } catch (Exception e) {
+                    log.error("处理订单异常", e);
+                    handlePendingList(handler);
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    private void destroy(){
+        ORDER_QUEUE_EXECUTOR.shutdownNow();
+    }
+
+    private void handlePendingList(Consumer<List<VoucherOrder>> handler) {
+        while(!Thread.currentThread().isInterrupted()){
+            try {
+                // 1、获取pending-list中的订单信息 XREADGROUP GROUP g1 c1 COUNT 50 STREAMS stream.orders 0
+                List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                        org.springframework.data.redis.connection.stream.Consumer.from(GROUP_NAME, "c1"),
+                        StreamReadOptions.empty().count(BATCH_SIZE),
+                        StreamOffset.create(QUEUE_NAME, ReadOffset.from("0"))
+                );
+                // 2、判断消息获取是否成功
+                if(list == null || list.isEmpty()) {
+                    // 2.1、如果获取失败，说明pending-list没有异常消息，break循环
+                    break;
+                }
+                // 3、解析消息并处理
+                handleRecords(list, handler);
+            } catch (Exception e) {
+                log.error("处理pending-list订单异常", e);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void handleRecords(List<MapRecord<String, Object, Object>> list, Consumer<List<VoucherOrder>> handler) {
+        for (MapRecord<String, Object, Object> record : list) {
+            handleRecord(record, handler);
+            // 5、ACK确认
+            stringRedisTemplate.opsForStream().acknowledge(QUEUE_NAME, GROUP_NAME, record.getId());
+        }
+    }
+
+    // 处理一条订单，抛出异常代表需要重试，正常返回代表已处理或已转入死信队列
+    private void handleRecord(MapRecord<String, Object, Object> record, Consumer<List<VoucherOrder>> handler) {
+        // 1、解析订单，内容错误重试也不会成功，直接转入死信队列
+        VoucherOrder voucherOrder;
+        try {
+            voucherOrder = BeanConverters.toVoucherOrder(record.getValue());
+        } catch (Exception e) {
+            deadLetter(record, e);
+            return;
+        }
+        // 2、处理订单，多次投递仍然失败的订单转入死信队列
+        try {
+            handler.accept(Collections.singletonList(voucherOrder));
+        } catch (RuntimeException e) {
+            if(deliveryCount(record) < MAX_DELIVERIES){
+                throw e;
+            }
+            deadLetter(record, e);
+        }
+    }
+
+    // XPENDING stream.orders g1 id id 1，读取订单已投递的次数
+    private long deliveryCount(MapRecord<String, Object, Object> record) {
+        String id = record.getId().getValue();
+        PendingMessages pending = stringRedisTemplate.opsForStream().pending(QUEUE_NAME, GROUP_NAME, Range.closed(id, id), 1);
+        return pending == null || pending.isEmpty() ? 0 : pending.get(0).getTotalDeliveryCount();
+    }
+
+    private void deadLetter(MapRecord<String, Object, Object> record, Exception cause) {
+        // XADD stream.orders.dead * sourceId .. error .. 原订单内容
+        Map<String, String> values = new HashMap<>(8);
+        if(record.getValue() != null){
+            record.getValue().forEach((field, value) -> values.put(String.valueOf(field), String.valueOf(value)));
+        }
+        values.put("sourceId", record.getId().getValue());
+        values.put("error", String.valueOf(cause));
+        stringRedisTemplate.opsForStream().add(DEAD_LETTER_QUEUE_NAME, values);
+        log.error("订单转入死信队列：{}", record.getId(), cause);
+    }
+
+    private void createGroupIfAbsent() {
+        try {
+            // XGROUP CREATE stream.orders g1 0 MKSTREAM
+            stringRedisTemplate.opsForStream().createGroup(QUEUE_NAME, ReadOffset.from("0"), GROUP_NAME);
+        } catch (RedisSystemException e) {
+            // BUSYGROUP 代表消费者组已存在
+            log.debug("消费者组已存在：{}", e.getMessage());
+        }
+    }
+}
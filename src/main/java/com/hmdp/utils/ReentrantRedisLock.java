@@ -0,0 +1,177 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOCK_RELEASE_CHANNEL;
+
+/**
+ * 可重入的Redis分布式锁
+ * <p>
+ * 锁是一个hash，field为线程标示，value为重入次数，加锁和释放都由Lua脚本原子完成。
+ * 线程第一次获取锁后启动看门狗，每隔超时时间的1/3续期一次，直到锁被完全释放，
+ * 因此临界区执行时间超过超时时间也不会丢锁；进程宕机后锁在超时时间后自动释放。
+ * </p>
+ */
+@Slf4j
+public class ReentrantRedisLock implements ILock {
+
+    private static final String KEY_PREFIX = "lock:";
+    private static final String ID_PREFIX = UUID.randomUUID().toString(true) + "-";
+    // 找不到看门狗时（锁已丢失）释放锁使用的超时时间
+    private static final long DEFAULT_TIMEOUT_SEC = 30;
+
+    private static final DefaultRedisScript<Long> LOCK_SCRIPT;
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+
+    static {
+        LOCK_SCRIPT = new DefaultRedisScript<>();
+        LOCK_SCRIPT.setLocation(new ClassPathResource("reentrant_lock.lua"));
+        LOCK_SCRIPT.setResultType(Long.class);
+
+        UNLOCK_SCRIPT = new DefaultRedisScript<>();
+        UNLOCK_SCRIPT.setLocation(new ClassPathResource("reentrant_unlock.lua"));
+        UNLOCK_SCRIPT.setResultType(Long.class);
+
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("reentrant_renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+    }
+
+    // 看门狗线程池
+    private static final ScheduledExecutorService WATCHDOG_EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+
+    // 锁key + 线程标示 -> 看门狗，同一线程通过不同的锁对象重入时共用一个看门狗
+    private static final Map<String, Watchdog> WATCHDOGS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final LockReleaseNotifier releaseNotifier;
+
+    public ReentrantRedisLock(String name, StringRedisTemplate stringRedisTemplate) {
+        this(name, stringRedisTemplate, null);
+    }
+
+    public ReentrantRedisLock(String name, StringRedisTemplate stringRedisTemplate, LockReleaseNotifier releaseNotifier) {
+        this.name = name;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.releaseNotifier = releaseNotifier;
+    }
+
+    @Override
+    public boolean tryLock(long timeoutSec) {
+        String key = KEY_PREFIX + name;
+        String threadId = ID_PREFIX + Thread.currentThread().getId();
+
+        // 1、执行加锁脚本，返回重入次数，0代表锁被其他线程持有
+        Long count = stringRedisTemplate.execute(
+                LOCK_SCRIPT,
+                Collections.singletonList(key),
+                threadId, String.valueOf(timeoutSec)
+        );
+        if(count == null || count == 0){
+            return false;
+        }
+
+        // 2、第一次获取锁，启动看门狗
+        if(count == 1){
+            startWatchdog(key, threadId, timeoutSec);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean tryLock(long waitMillis, long timeoutSec) {
+        // 没有释放通知时只尝试一次
+        if(releaseNotifier == null){
+            return tryLock(timeoutSec);
+        }
+        return releaseNotifier.await(KEY_PREFIX + name, waitMillis, () -> tryLock(timeoutSec));
+    }
+
+    @Override
+    public void unlock() {
+        String key = KEY_PREFIX + name;
+        String threadId = ID_PREFIX + Thread.currentThread().getId();
+        Watchdog watchdog = WATCHDOGS.get(key + "|" + threadId);
+        long timeoutSec = watchdog == null ? DEFAULT_TIMEOUT_SEC : watchdog.timeoutSec;
+
+        // 1、执行释放脚本：-1 未持有锁，0 仍持有（重入），1 已释放
+        Long result = stringRedisTemplate.execute(
+                UNLOCK_SCRIPT,
+                Collections.singletonList(key),
+                threadId, String.valueOf(timeoutSec), LOCK_RELEASE_CHANNEL
+        );
+
+        // 2、锁已释放或已丢失，停止看门狗
+        if(result == null || result != 0){
+            stopWatchdog(key, threadId);
+        }
+        // 3、已释放，直接唤醒本节点等待的线程，不必等频道消息
+        if(result != null && result == 1 && releaseNotifier != null){
+            releaseNotifier.signal(key);
+        }
+        if(result != null && result == -1){
+            log.warn("释放锁失败，锁未被当前线程持有：{}", key);
+        }
+    }
+
+    private void startWatchdog(String key, String threadId, long timeoutSec) {
+        Watchdog watchdog = new Watchdog(timeoutSec);
+        long period = Math.max(1000, TimeUnit.SECONDS.toMillis(timeoutSec) / 3);
+        watchdog.future = WATCHDOG_EXECUTOR.scheduleAtFixedRate(
+                () -> renew(key, threadId, watchdog), period, period, TimeUnit.MILLISECONDS);
+        Watchdog old = WATCHDOGS.put(key + "|" + threadId, watchdog);
+        if(old != null){
+            // 上一次持有锁时锁已过期丢失，但看门狗还未发现
+            old.future.cancel(false);
+        }
+    }
+
+    private void stopWatchdog(String key, String threadId) {
+        Watchdog watchdog = WATCHDOGS.remove(key + "|" + threadId);
+        if(watchdog != null){
+            watchdog.future.cancel(false);
+        }
+    }
+
+    private void renew(String key, String threadId, Watchdog watchdog) {
+        try {
+            Long r = stringRedisTemplate.execute(
+                    RENEW_SCRIPT,
+                    Collections.singletonList(key),
+                    threadId, String.valueOf(watchdog.timeoutSec)
+            );
+            if(r == null || r == 0){
+                // 锁已不再被当前线程持有
+                log.warn("锁续期失败，锁已丢失：{}", key);
+                WATCHDOGS.remove(key + "|" + threadId, watchdog);
+                watchdog.future.cancel(false);
+            }
+        } catch (Exception e) {
+            // Redis暂时不可用，下次继续续期
+            log.warn("锁续期异常：{}", key, e);
+        }
+    }
+
+    private static class Watchdog {
+        private final long timeoutSec;
+        private volatile ScheduledFuture<?> future;
+
+        private Watchdog(long timeoutSec) {
+            this.timeoutSec = timeoutSec;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.hmdp.utils;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.UserDTO;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -9,15 +8,24 @@ import org.springframework.web.servlet.HandlerInterceptor;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 public class RefreshTokenInterceptor implements HandlerInterceptor {
 
 
     private StringRedisTemplate stringRedisTemplate;
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate){
+    private LoginSessionCache loginSessionCache;
+
+    private TokenTtlRefresher tokenTtlRefresher;
+
+    private SignedTokenService signedTokenService;
+
+    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate, LoginSessionCache loginSessionCache,
+                                   TokenTtlRefresher tokenTtlRefresher, SignedTokenService signedTokenService){
         this.stringRedisTemplate=stringRedisTemplate;
+        this.loginSessionCache=loginSessionCache;
+        this.tokenTtlRefresher=tokenTtlRefresher;
+        this.signedTokenService=signedTokenService;
     }
 
     //前置拦截器
@@ -29,23 +37,41 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
            return true;
         }
 
-        // 2、基于token获取redis中的用户
+        // 签名token直接校验签名，不访问Redis
+        if(signedTokenService.isEnabled() && signedTokenService.isSignedToken(token)){
+            UserDTO user = signedTokenService.verify(token);
+            if(user != null){
+                UserHolder.saveUser(user);
+            }
+            return true;
+        }
+
+        // 2、先查本地缓存，命中时不访问Redis
+        UserDTO cached = loginSessionCache.get(token);
+        if(cached != null){
+            UserHolder.saveUser(cached);
+            tokenTtlRefresher.touch(token);
+            return true;
+        }
+
+        // 3、基于token获取redis中的用户
         String key=RedisConstants.LOGIN_USER_KEY + token;
         Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(key);
 
-        // 3、判断用户是否存在
+        // 4、判断用户是否存在
         if(userMap.isEmpty()){
            return true;
         }
 
         // 5、将查询到的Hash数据传为UserDTO对象
-        UserDTO userDTO=BeanUtil.fillBeanWithMap(userMap,new UserDTO(),false);
+        UserDTO userDTO=BeanConverters.toUserDTO(userMap);
 
-        // 6、存在，保存用户信息到ThreadLocal
+        // 6、存在，保存用户信息到ThreadLocal，并放入本地缓存
         UserHolder.saveUser(userDTO);
+        loginSessionCache.put(token, userDTO);
 
-        // 7、刷新token有效期
-        stringRedisTemplate.expire(key,RedisConstants.LOGIN_USER_TTL, TimeUnit.MINUTES);
+        // 7、刷新token有效期，剩余有效期低于阈值时才刷新，由后台批量执行
+        tokenTtlRefresher.touch(token);
 
         // 8、放行
         return true;
@@ -0,0 +1,404 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.VoucherOrder;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 单机内存环形队列，适用于单实例部署和压测，省去 Redis Stream 的读写和确认
+ * <p>
+ * 多生产者通过 CAS 抢占槽位，单消费者线程批量取出订单。订单在发布前先追加到预写日志（WAL），
+ * 进程重启时重放日志中的订单，依赖订单处理的幂等性去重。日志按大小滚动，旧日志中的订单全部处理后删除。
+ * 多次重试仍然失败的订单写入死信日志并立即刷盘，进程重启时与预写日志一起重放；
+ * 死信日志写入失败时不再删除旧日志，由重启后重放预写日志兜底。
+ * </p>
+ * <p>
+ * syncOnOffer 为 true（默认）时，offer 在订单刷盘后才返回（组提交：同时等待的生产者共用一次 fsync），
+ * 返回给用户的订单不会因进程崩溃丢失。为 false 时只由消费者线程每 WAL_FORCE_INTERVAL_MILLIS 刷盘一次，
+ * 崩溃前最多这段时间内的订单会丢失，而秒杀脚本已经扣减了 seckill:stock:{voucherId} 并把用户加入
+ * seckill:order:{voucherId}，用户无法重新下单。关闭时崩溃后需要对照 tb_voucher_order 核对 seckill:order 中的用户：
+ * 没有订单的用户从集合中移除，并按移除的人数把库存加回。
+ * </p>
+ */
+@Slf4j
+public class RingBufferOrderQueue implements OrderQueue {
+
+    // 每次最多取出的订单数
+    private static final int BATCH_SIZE = 256;
+    // 日志文件超过该大小后滚动
+    private static final long WAL_ROTATE_BYTES = 4 * 1024 * 1024;
+    // 日志刷盘的最小间隔（毫秒）
+    private static final long WAL_FORCE_INTERVAL_MILLIS = 200;
+    // 批量处理失败后的重试次数
+    private static final int MAX_RETRY = 3;
+    private static final String WAL_PREFIX = "order-wal-";
+    private static final String DEAD_LETTER_PREFIX = "order-dead-";
+    private static final String WAL_SUFFIX = ".log";
+
+    // 线程池
+    private static final ExecutorService ORDER_QUEUE_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final AtomicReferenceArray<VoucherOrder> buffer;
+    // 每个槽位的序号：等于 pos 代表可写，等于 pos + 1 代表已发布可读
+    private final AtomicLongArray sequences;
+    private final int capacity;
+    private final int mask;
+    // 生产者下一个要抢占的位置
+    private final AtomicLong tail = new AtomicLong();
+    // 消费者下一个要读取的位置，只由消费者线程写入
+    private volatile long head;
+
+    private final File walDir;
+    // offer 是否等待订单刷盘后再返回
+    private final boolean syncOnOffer;
+    private volatile Wal currentWal;
+    // 等待删除的旧日志，以及删除前消费者需要到达的位置
+    private Wal retiredWal;
+    private long retiredBoundary;
+    // 死信日志，只由消费者线程写入
+    private Wal deadLetterWal;
+    // 有订单既没有处理成功也没有写入死信日志，保留所有预写日志直到重启
+    private boolean walPinned;
+
+    public RingBufferOrderQueue(String walDir, int capacity, boolean syncOnOffer) {
+        if(capacity <= 0 || (capacity & (capacity - 1)) != 0){
+            throw new IllegalArgumentException("环形队列容量必须是2的幂：" + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.walDir = new File(walDir);
+        this.syncOnOffer = syncOnOffer;
+    }
+
+    @Override
+    public boolean enqueuedByScript() {
+        return false;
+    }
+
+    @Override
+    public void offer(VoucherOrder voucherOrder) {
+        // 1、抢占槽位，队列满时自旋等待消费者
+        long pos;
+        while(true){
+            pos = tail.get();
+            long dif = sequences.get((int) pos & mask) - pos;
+            if(dif == 0){
+                if(tail.compareAndSet(pos, pos + 1)){
+                    break;
+                }
+            }else if(dif < 0){
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+            }
+        }
+        // 2、写入预写日志，必须在抢占槽位之后读取 currentWal，日志滚动依赖这个顺序
+        //    订单发布前消费者不会越过该槽位，日志在刷盘完成前不会被删除
+        try {
+            Wal wal = currentWal;
+            long seq = wal.append(voucherOrder);
+            if(syncOnOffer){
+                wal.sync(seq);
+            }
+        } catch (IOException e) {
+            log.error("订单写入预写日志失败，订单仅保存在内存中：{}", voucherOrder, e);
+        }
+        // 3、发布订单
+        int index = (int) pos & mask;
+        buffer.set(index, voucherOrder);
+        sequences.set(index, pos + 1);
+    }
+
+    @Override
+    public void start(Consumer<List<VoucherOrder>> handler) {
+        // 1、先打开新日志，保证重放期间写入的订单不会与旧日志一起被删除
+        List<Path> oldDeadLetters = listFiles(DEAD_LETTER_PREFIX);
+        List<Path> oldWals = listFiles(WAL_PREFIX);
+        try {
+            currentWal = Wal.open(walDir, WAL_PREFIX, nextIndex(oldWals, WAL_PREFIX));
+            deadLetterWal = Wal.open(walDir, DEAD_LETTER_PREFIX, nextIndex(oldDeadLetters, DEAD_LETTER_PREFIX));
+        } catch (IOException e) {
+            throw new IllegalStateException("无法创建订单预写日志：" + walDir, e);
+        }
+        ORDER_QUEUE_EXECUTOR.submit(() -> {
+            // 2、重放上次进程退出前的死信订单和未处理完的订单
+            replay(oldDeadLetters, handler);
+            replay(oldWals, handler);
+            // 3、循环批量处理订单
+            long lastForce = System.currentTimeMillis();
+            List<VoucherOrder> batch = new ArrayList<>(BATCH_SIZE);
+            while(!Thread.currentThread().isInterrupted()){
+                drainTo(batch);
+                if(batch.isEmpty()){
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }else{
+                    if(!handleWithRetry(batch, handler)){
+                        walPinned = true;
+                    }
+                    batch.clear();
+                }
+                long now = System.currentTimeMillis();
+                if(now - lastForce >= WAL_FORCE_INTERVAL_MILLIS){
+                    lastForce = now;
+                    maintainWal();
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    private void destroy(){
+        ORDER_QUEUE_EXECUTOR.shutdownNow();
+    }
+
+    // 取出已发布的订单，最多 BATCH_SIZE 个，取出后槽位立即归还给生产者
+    private void drainTo(List<VoucherOrder> batch) {
+        long pos = head;
+        while(batch.size() < BATCH_SIZE){
+            int index = (int) pos & mask;
+            if(sequences.get(index) != pos + 1){
+                break;
+            }
+            batch.add(buffer.get(index));
+            buffer.set(index, null);
+            sequences.set(index, pos + capacity);
+            pos++;
+        }
+        head = pos;
+    }
+
+    /**
+     * 处理一批订单，逐个处理仍然失败的订单写入死信日志
+     * @return false 代表有订单既没有处理成功，也没有写入死信日志
+     */
+    private boolean handleWithRetry(List<VoucherOrder> batch, Consumer<List<VoucherOrder>> handler) {
+        for (int i = 1; i <= MAX_RETRY; i++) {
+            try {
+                handler.accept(batch);
+                return true;
+            } catch (Exception e) {
+                log.error("处理订单异常，第{}次", i, e);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20L * i));
+            }
+        }
+        // 整批多次失败，逐个处理，避免一个异常订单拖累其他订单
+        boolean saved = true;
+        for (VoucherOrder order : batch) {
+            try {
+                handler.accept(Collections.singletonList(order));
+            } catch (Exception e) {
+                saved &= deadLetter(order, e);
+            }
+        }
+        return saved;
+    }
+
+    // 失败的订单写入死信日志并立即刷盘，之后才允许删除包含该订单的预写日志
+    private boolean deadLetter(VoucherOrder order, Exception cause) {
+        try {
+            deadLetterWal.append(order);
+            deadLetterWal.force();
+            log.error("订单处理失败，已写入死信日志，重启后重放：{}", order, cause);
+            return true;
+        } catch (IOException e) {
+            log.error("订单处理失败且写入死信日志失败，保留预写日志，重启后重放：{}", order, cause);
+            log.error("写入死信日志异常", e);
+            return false;
+        }
+    }
+
+    // 刷盘，并在需要时滚动和删除日志
+    private void maintainWal() {
+        try {
+            Wal wal = currentWal;
+            wal.force();
+            // 1、旧日志中的订单都已处理或写入死信日志，删除旧日志
+            if(retiredWal != null && !walPinned && head >= retiredBoundary){
+                retiredWal.delete();
+                retiredWal = null;
+            }
+            // 2、当前日志过大，滚动到新日志
+            if(retiredWal == null && wal.size() >= WAL_ROTATE_BYTES){
+                currentWal = wal.next(walDir);
+                // 先切换日志再读取 tail：在此之后抢占槽位的生产者一定写入新日志
+                retiredBoundary = tail.get();
+                retiredWal = wal;
+            }
+        } catch (IOException e) {
+            log.error("维护订单预写日志异常", e);
+        }
+    }
+
+    // 重放旧的预写日志或死信日志，仍然失败的订单写入新的死信日志
+    private void replay(List<Path> paths, Consumer<List<VoucherOrder>> handler) {
+        for (Path path : paths) {
+            List<VoucherOrder> orders = new ArrayList<>();
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while((line = reader.readLine()) != null){
+                    VoucherOrder order = Wal.parse(line);
+                    if(order != null){
+                        orders.add(order);
+                    }
+                }
+            } catch (IOException e) {
+                // 保留日志，下次启动时再重放
+                log.error("订单预写日志读取失败：{}", path, e);
+                continue;
+            }
+            boolean saved = true;
+            for (int from = 0; from < orders.size(); from += BATCH_SIZE) {
+                saved &= handleWithRetry(orders.subList(from, Math.min(orders.size(), from + BATCH_SIZE)), handler);
+            }
+            if(!saved){
+                // 保留日志，下次启动时再重放
+                log.error("订单预写日志重放失败：{}", path);
+                continue;
+            }
+            try {
+                Files.delete(path);
+                log.info("订单预写日志重放完成：{}，共{}个订单", path, orders.size());
+            } catch (IOException e) {
+                log.error("删除已重放的订单预写日志失败：{}", path, e);
+            }
+        }
+    }
+
+    private List<Path> listFiles(String prefix) {
+        if(!walDir.exists() && !walDir.mkdirs()){
+            throw new IllegalStateException("无法创建订单预写日志目录：" + walDir);
+        }
+        try (Stream<Path> files = Files.list(walDir.toPath())) {
+            return files.filter(p -> p.getFileName().toString().startsWith(prefix)
+                            && p.getFileName().toString().endsWith(WAL_SUFFIX))
+                    .sorted(Comparator.comparingLong(p -> fileIndex(p, prefix)))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new IllegalStateException("无法读取订单预写日志目录：" + walDir, e);
+        }
+    }
+
+    private static long nextIndex(List<Path> paths, String prefix) {
+        return paths.isEmpty() ? 0 : fileIndex(paths.get(paths.size() - 1), prefix) + 1;
+    }
+
+    private static long fileIndex(Path path, String prefix) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - WAL_SUFFIX.length()));
+    }
+
+    /**
+     * 预写日志或死信日志文件，每行一个订单：id,userId,voucherId
+     */
+    private static class Wal {
+        private final String prefix;
+        private final long index;
+        private final Path path;
+        private final FileChannel channel;
+        // 已追加的订单数，以及最近一次刷盘覆盖的订单数
+        private final AtomicLong appended = new AtomicLong();
+        private volatile long forced;
+
+        private Wal(String prefix, long index, Path path, FileChannel channel) {
+            this.prefix = prefix;
+            this.index = index;
+            this.path = path;
+            this.channel = channel;
+        }
+
+        private static Wal open(File dir, String prefix, long index) throws IOException {
+            Path path = new File(dir, prefix + index + WAL_SUFFIX).toPath();
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            return new Wal(prefix, index, path, channel);
+        }
+
+        private Wal next(File dir) throws IOException {
+            return open(dir, prefix, index + 1);
+        }
+
+        /**
+         * APPEND 模式下每次 write 都是原子追加，多个生产者可以并发写入
+         * @return 追加后的订单序号，传给 sync 等待刷盘
+         */
+        private long append(VoucherOrder order) throws IOException {
+            String line = order.getId() + "," + order.getUserId() + "," + order.getVoucherId() + "\n";
+            channel.write(ByteBuffer.wrap(line.getBytes(StandardCharsets.US_ASCII)));
+            return appended.incrementAndGet();
+        }
+
+        // 组提交：等待序号 seq 之前的订单刷盘，持有锁的线程一次 fsync 覆盖所有已追加的订单
+        private void sync(long seq) throws IOException {
+            if(forced >= seq){
+                return;
+            }
+            synchronized (this) {
+                if(forced < seq){
+                    force();
+                }
+            }
+        }
+
+        // 先读取已追加的数量再刷盘，刷盘完成后这些订单都已落盘
+        private synchronized void force() throws IOException {
+            long target = appended.get();
+            channel.force(false);
+            if(target > forced){
+                forced = target;
+            }
+        }
+
+        private long size() throws IOException {
+            return channel.size();
+        }
+
+        private void delete() throws IOException {
+            channel.close();
+            Files.deleteIfExists(path);
+        }
+
+        // 进程崩溃时最后一行可能不完整，解析失败的行直接跳过
+        private static VoucherOrder parse(String line) {
+            String[] parts = line.split(",");
+            if(parts.length != 3){
+                return null;
+            }
+            try {
+                VoucherOrder order = new VoucherOrder();
+                order.setId(Long.valueOf(parts[0]));
+                order.setUserId(Long.valueOf(parts[1]));
+                order.setVoucherId(Long.valueOf(parts[2]));
+                return order;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
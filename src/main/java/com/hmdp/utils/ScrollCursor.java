@@ -0,0 +1,144 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 滚动分页的游标，记录上一页最后一条的分数和id
+ * <p>
+ * 所有滚动列表按 分数倒序、id倒序 排列，下一页从 (分数, id) 之后开始，分数相同的数据再多也不会重复或遗漏。
+ * 分数为毫秒时间戳（整数）。游标对客户端不透明，编码为16字节的base64url字符串。
+ * </p>
+ */
+public class ScrollCursor {
+
+    /**
+     * 分数倒序，分数相同时id倒序
+     */
+    public static final Comparator<TypedTuple<String>> ORDER =
+            Comparator.<TypedTuple<String>>comparingDouble(ScrollCursor::score).reversed()
+                    .thenComparing(tuple -> Long.parseLong(tuple.getValue()), Comparator.reverseOrder());
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final long score;
+    private final long id;
+
+    private ScrollCursor(long score, long id) {
+        this.score = score;
+        this.id = id;
+    }
+
+    public static ScrollCursor of(long score, long id) {
+        return new ScrollCursor(score, id);
+    }
+
+    public long getScore() {
+        return score;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * 解析游标
+     * @return 第一页（游标为空）时返回null
+     * @throws IllegalArgumentException 游标格式错误
+     */
+    public static ScrollCursor parse(String cursor) {
+        if(StrUtil.isBlank(cursor)){
+            return null;
+        }
+        byte[] bytes = DECODER.decode(cursor);
+        if(bytes.length != 16){
+            throw new IllegalArgumentException("无效的游标");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new ScrollCursor(buffer.getLong(), buffer.getLong());
+    }
+
+    public String encode() {
+        return ENCODER.encodeToString(ByteBuffer.allocate(16).putLong(score).putLong(id).array());
+    }
+
+    /**
+     * 下一页的游标，本页不满一页时说明已经没有更多数据，返回null
+     */
+    public static String next(List<TypedTuple<String>> page, int count) {
+        if(page.size() < count){
+            return null;
+        }
+        TypedTuple<String> last = page.get(page.size() - 1);
+        return of((long) score(last), Long.parseLong(last.getValue())).encode();
+    }
+
+    /**
+     * 每页的数量，未指定时使用默认值，并限制在 [1, MAX_SCROLL_PAGE_SIZE] 之内
+     */
+    public static int pageSize(Integer size, int defaultSize) {
+        int count = size == null ? defaultSize : size;
+        return Math.max(1, Math.min(count, SystemConstants.MAX_SCROLL_PAGE_SIZE));
+    }
+
+    /**
+     * 时间对应的分数
+     */
+    public static long toScore(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    public static LocalDateTime toTime(long score) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(score), ZoneId.systemDefault());
+    }
+
+    /**
+     * 在管道中查询游标之后的 count 条：分数与游标相同的全部数据 ZRANGEBYSCORE key score score，
+     * 以及分数更小的前 count 条 ZREVRANGEBYSCORE key score-1 0 LIMIT 0 count
+     * @return 发送的命令数，用于 {@link #collect} 读取结果
+     */
+    public static int query(StringRedisConnection conn, String key, ScrollCursor from, int count) {
+        if(from == null){
+            conn.zRevRangeByScoreWithScores(key, 0, Long.MAX_VALUE, 0, count);
+            return 1;
+        }
+        conn.zRangeByScoreWithScores(key, from.score, from.score);
+        conn.zRevRangeByScoreWithScores(key, 0, from.score - 1, 0, count);
+        return 2;
+    }
+
+    /**
+     * 读取 {@link #query} 的结果，排除游标及之前的数据，按 {@link #ORDER} 排序
+     * @param index 第一条命令的结果在管道结果中的位置
+     */
+    @SuppressWarnings("unchecked")
+    public static List<TypedTuple<String>> collect(List<Object> results, int index, ScrollCursor from) {
+        List<TypedTuple<String>> page = new ArrayList<>();
+        if(from != null){
+            for (TypedTuple<String> tuple : (Set<TypedTuple<String>>) results.get(index++)) {
+                if(Long.parseLong(tuple.getValue()) < from.id){
+                    page.add(tuple);
+                }
+            }
+        }
+        page.addAll((Set<TypedTuple<String>>) results.get(index));
+        page.sort(ORDER);
+        return page;
+    }
+
+    private static double score(TypedTuple<String> tuple) {
+        return tuple.getScore() == null ? 0 : tuple.getScore();
+    }
+}
@@ -0,0 +1,285 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.SeckillTicketDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 秒杀虚拟等候室
+ * <p>
+ * 每张优惠券同时执行秒杀的请求数不超过 max-concurrency，超出的请求领取排队凭证后立即返回，
+ * 由后台按照 admit-rate 的固定速率放行，客户端通过凭证轮询抢购结果。
+ * 凭证保存在当前实例内存中，多实例部署时轮询请求需要路由到发放凭证的实例。
+ * 已完成的凭证保留 TICKET_TTL_MILLIS 后删除，没有请求、没有排队凭证且空闲超过 ROOM_IDLE_MILLIS 的等候室随之删除。
+ * </p>
+ */
+@Slf4j
+@Component
+public class SeckillWaitingRoom {
+
+    public static final int TICKET_WAITING = 0;
+    public static final int TICKET_SUCCESS = 1;
+    public static final int TICKET_FAIL = 2;
+
+    // 放行调度的时间间隔（毫秒）
+    private static final long ADMIT_INTERVAL_MILLIS = 100;
+    // 已完成的凭证保留多久供客户端查询（毫秒）
+    private static final long TICKET_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    // 等候室空闲多久后删除（毫秒）
+    private static final long ROOM_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    // 清理过期凭证和空闲等候室的时间间隔（毫秒）
+    private static final long EVICT_INTERVAL_MILLIS = 1000;
+
+    // 每张优惠券允许同时执行秒杀的请求数
+    @Value("${hmdp.seckill.waiting-room.max-concurrency:50}")
+    private int maxConcurrency;
+
+    // 每张优惠券每秒从队列中放行的凭证数
+    @Value("${hmdp.seckill.waiting-room.admit-rate:200}")
+    private int admitRate;
+
+    // 每张优惠券最多排队的凭证数，超出直接拒绝
+    @Value("${hmdp.seckill.waiting-room.max-queue-size:100000}")
+    private int maxQueueSize;
+
+    // 放行调度线程
+    private static final ScheduledExecutorService ADMIT_SCHEDULER = Executors.newSingleThreadScheduledExecutor();
+    // 执行已放行凭证的线程池
+    private static final ExecutorService ADMITTED_EXECUTOR = Executors.newFixedThreadPool(8);
+
+    // 优惠券id -> 等候室
+    private final Map<Long, Room> rooms = new ConcurrentHashMap<>();
+    // 凭证id -> 凭证
+    private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init(){
+        ADMIT_SCHEDULER.scheduleWithFixedDelay(this::admit, ADMIT_INTERVAL_MILLIS, ADMIT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        ADMIT_SCHEDULER.scheduleWithFixedDelay(this::evict, EVICT_INTERVAL_MILLIS, EVICT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy(){
+        ADMIT_SCHEDULER.shutdown();
+        ADMITTED_EXECUTOR.shutdown();
+    }
+
+    /**
+     * 进入等候室
+     * @param voucherId 优惠券id
+     * @param userId 用户id
+     * @param seckill 真正的秒杀逻辑，可能在后台线程中执行，不能依赖 UserHolder
+     * @return 未排队时返回秒杀结果，排队时返回排队凭证
+     */
+    public Result enter(Long voucherId, Long userId, Supplier<Result> seckill){
+        // 进入期间计数，与清理等候室在同一个key上串行，保证不会使用已被删除的等候室
+        Room room = rooms.compute(voucherId, (id, r) -> {
+            Room entered = r == null ? new Room(maxConcurrency) : r;
+            entered.entering.incrementAndGet();
+            entered.lastUsedTime = System.currentTimeMillis();
+            return entered;
+        });
+        try {
+            return enter(room, voucherId, userId, seckill);
+        } finally {
+            room.entering.decrementAndGet();
+        }
+    }
+
+    private Result enter(Room room, Long voucherId, Long userId, Supplier<Result> seckill){
+        // 1、没有人排队且并发未满，直接执行
+        if(room.queue.isEmpty() && room.permits.tryAcquire()){
+            try {
+                return seckill.get();
+            } finally {
+                room.permits.release();
+            }
+        }
+
+        // 2、同一用户重复进入，返回已有的凭证
+        String userTicketKey = voucherId + ":" + userId;
+        Ticket existing = room.userTickets.get(userTicketKey);
+        if(existing != null){
+            return Result.ok(existing.toDTO(room));
+        }
+
+        // 3、排队人数过多，直接拒绝
+        if(room.size.incrementAndGet() > maxQueueSize){
+            room.size.decrementAndGet();
+            return Result.fail("排队人数过多，请稍后再试");
+        }
+
+        // 4、发放排队凭证，登记成功后才分配序号，并发重复进入不会占用排队位置
+        boolean[] created = new boolean[1];
+        Ticket ticket = room.userTickets.computeIfAbsent(userTicketKey, key -> {
+            created[0] = true;
+            return new Ticket(UUID.randomUUID().toString(true), voucherId, userId, room.issued.incrementAndGet(), seckill);
+        });
+        if(!created[0]){
+            // 并发重复进入，以先到的凭证为准
+            room.size.decrementAndGet();
+            return Result.ok(ticket.toDTO(room));
+        }
+        tickets.put(ticket.id, ticket);
+        room.queue.offer(ticket);
+        return Result.ok(ticket.toDTO(room));
+    }
+
+    /**
+     * 查询排队凭证
+     * @param ticketId 凭证id
+     * @param userId 当前用户id，只能查询自己的凭证
+     * @return 凭证信息，不存在时返回null
+     */
+    public SeckillTicketDTO getTicket(String ticketId, Long userId){
+        Ticket ticket = tickets.get(ticketId);
+        if(ticket == null || !ticket.userId.equals(userId)){
+            return null;
+        }
+        return ticket.toDTO(rooms.get(ticket.voucherId));
+    }
+
+    // 按固定速率从每个等候室放行凭证
+    private void admit(){
+        try {
+            int admitPerTick = Math.max(1, (int) (admitRate * ADMIT_INTERVAL_MILLIS / 1000));
+            for (Room room : rooms.values()) {
+                for (int i = 0; i < admitPerTick && !room.queue.isEmpty(); i++) {
+                    // 1、并发已满，本轮不再放行
+                    if(!room.permits.tryAcquire()){
+                        break;
+                    }
+                    Ticket ticket = room.queue.poll();
+                    if(ticket == null){
+                        room.permits.release();
+                        break;
+                    }
+                    room.admitted.incrementAndGet();
+                    // 2、交给线程池执行秒杀
+                    ADMITTED_EXECUTOR.submit(() -> runTicket(room, ticket));
+                }
+            }
+        } catch (Exception e) {
+            log.error("等候室放行异常", e);
+        }
+    }
+
+    // 清理过期的凭证和空闲的等候室
+    private void evict(){
+        try {
+            long now = System.currentTimeMillis();
+            // 1、删除完成超过 TICKET_TTL_MILLIS 的凭证
+            tickets.values().removeIf(ticket -> {
+                boolean expired = ticket.finishTime > 0 && now - ticket.finishTime > TICKET_TTL_MILLIS;
+                if(expired){
+                    Room room = rooms.get(ticket.voucherId);
+                    if(room != null){
+                        room.userTickets.remove(ticket.voucherId + ":" + ticket.userId, ticket);
+                    }
+                }
+                return expired;
+            });
+            // 2、删除没有请求、没有凭证且空闲超过 ROOM_IDLE_MILLIS 的等候室
+            for (Long voucherId : rooms.keySet()) {
+                rooms.computeIfPresent(voucherId, (id, room) -> room.isIdle(now) ? null : room);
+            }
+        } catch (Exception e) {
+            log.error("清理等候室异常", e);
+        }
+    }
+
+    private void runTicket(Room room, Ticket ticket){
+        try {
+            Result result = ticket.seckill.get();
+            if(Boolean.TRUE.equals(result.getSuccess())){
+                ticket.orderId = (Long) result.getData();
+                ticket.status = TICKET_SUCCESS;
+            }else{
+                ticket.errorMsg = result.getErrorMsg();
+                ticket.status = TICKET_FAIL;
+            }
+        } catch (Exception e) {
+            log.error("处理排队凭证异常", e);
+            ticket.errorMsg = "服务器异常";
+            ticket.status = TICKET_FAIL;
+        } finally {
+            ticket.finishTime = System.currentTimeMillis();
+            room.size.decrementAndGet();
+            room.permits.release();
+        }
+    }
+
+    private static class Room {
+        // 并发许可
+        private final Semaphore permits;
+        // 排队中的凭证
+        private final Queue<Ticket> queue = new ConcurrentLinkedQueue<>();
+        // 优惠券id:用户id -> 凭证，防止同一用户重复排队
+        private final Map<String, Ticket> userTickets = new ConcurrentHashMap<>();
+        // 排队和执行中的凭证数
+        private final AtomicInteger size = new AtomicInteger();
+        // 已发放的凭证序号
+        private final AtomicLong issued = new AtomicLong();
+        // 已放行的凭证数
+        private final AtomicLong admitted = new AtomicLong();
+        // 正在进入的请求数
+        private final AtomicInteger entering = new AtomicInteger();
+        // 最近一次进入的时间
+        private volatile long lastUsedTime;
+
+        private Room(int maxConcurrency) {
+            this.permits = new Semaphore(maxConcurrency);
+        }
+
+        private boolean isIdle(long now) {
+            return entering.get() == 0 && size.get() == 0 && userTickets.isEmpty()
+                    && now - lastUsedTime > ROOM_IDLE_MILLIS;
+        }
+    }
+
+    private static class Ticket {
+        private final String id;
+        private final Long voucherId;
+        private final Long userId;
+        private final long seq;
+        private final Supplier<Result> seckill;
+        private volatile int status = TICKET_WAITING;
+        private volatile Long orderId;
+        private volatile String errorMsg;
+        private volatile long finishTime;
+
+        private Ticket(String id, Long voucherId, Long userId, long seq, Supplier<Result> seckill) {
+            this.id = id;
+            this.voucherId = voucherId;
+            this.userId = userId;
+            this.seq = seq;
+            this.seckill = seckill;
+        }
+
+        private SeckillTicketDTO toDTO(Room room) {
+            SeckillTicketDTO dto = new SeckillTicketDTO();
+            dto.setTicketId(id);
+            dto.setVoucherId(voucherId);
+            int s = status;
+            dto.setStatus(s);
+            if(s == TICKET_WAITING && room != null){
+                dto.setPosition(Math.max(0, seq - room.admitted.get() - 1));
+            }
+            dto.setOrderId(orderId);
+            dto.setErrorMsg(errorMsg);
+            return dto;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKED_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
+
+/**
+ * 签名token：token本身携带用户信息和过期时间，校验只需要计算HMAC，不需要访问Redis
+ * <p>
+ * token格式为 base64url(payload).base64url(HmacSHA256(payload))，
+ * payload依次为 用户id、过期时间（秒）、token编号jti、昵称、头像。
+ * 登出时把 jti:过期时间 加入Redis中的吊销集合（zset，分数为Redis服务器的写入时间），
+ * 各节点每秒只同步上次同步位置之后新增的记录，本地记录在token过期后自行清理。
+ * </p>
+ */
+@Slf4j
+@Component
+public class SignedTokenService {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_SECRET_LENGTH = 32;
+    // 吊销集合的同步间隔
+    private static final long SYNC_INTERVAL_MILLIS = 1000;
+    // 增量同步时向前多读的时长，覆盖写入时间相同或Redis时钟小幅回拨的记录
+    private static final long SYNC_LOOKBACK_MILLIS = 5000;
+    // 本地清理过期记录的间隔
+    private static final long PURGE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final DefaultRedisScript<Long> REVOKE_SCRIPT;
+    static{
+        REVOKE_SCRIPT=new DefaultRedisScript<>();
+        REVOKE_SCRIPT.setLocation(new ClassPathResource("token_revoke.lua"));
+        REVOKE_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // 是否启用签名token，否则使用Redis中的登录信息
+    private final boolean enabled;
+    private final SecretKeySpec key;
+    // Mac 不是线程安全的，每个线程一个
+    private final ThreadLocal<Mac> macs;
+
+    // 本地的吊销集合 jti -> 过期时间（秒），定时从Redis增量同步；本节点登出的token立即加入
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+    // 已同步到的最大写入时间（毫秒），只由同步线程读写
+    private long syncedUntil;
+    private long lastPurgeMillis;
+
+    private final ScheduledExecutorService syncExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public SignedTokenService(StringRedisTemplate stringRedisTemplate,
+                              @Value("${hmdp.login.token-mode:session}") String mode,
+                              @Value("${hmdp.login.token-secret:}") String secret) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.enabled = "signed".equals(mode);
+        if(enabled && secret.length() < MIN_SECRET_LENGTH){
+            throw new IllegalStateException("签名token模式下 hmdp.login.token-secret 至少需要" + MIN_SECRET_LENGTH + "个字符");
+        }
+        this.key = enabled ? new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM) : null;
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @PostConstruct
+    private void init(){
+        if(enabled){
+            syncExecutor.scheduleWithFixedDelay(this::syncRevoked, 0, SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    private void destroy(){
+        syncExecutor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 是否是签名token，与旧的随机token（不含 . ）区分
+     */
+    public boolean isSignedToken(String token) {
+        return token.indexOf('.') > 0;
+    }
+
+    /**
+     * 签发token，有效期与Redis中的登录信息相同
+     */
+    public String issue(UserDTO user) {
+        long exp = System.currentTimeMillis() / 1000 + TimeUnit.MINUTES.toSeconds(LOGIN_USER_TTL);
+        byte[] payload = writePayload(user, exp, RANDOM.nextLong());
+        return ENCODER.encodeToString(payload) + "." + ENCODER.encodeToString(sign(payload));
+    }
+
+    /**
+     * 校验token
+     * @return 用户，签名错误、已过期或已吊销时返回null
+     */
+    public UserDTO verify(String token) {
+        Payload payload = parse(token);
+        if(payload == null || payload.exp < System.currentTimeMillis() / 1000 || isRevoked(payload.jti)){
+            return null;
+        }
+        return payload.user;
+    }
+
+    /**
+     * 吊销token，token过期后从吊销集合中清理
+     */
+    public void revoke(String token) {
+        Payload payload = parse(token);
+        if(payload == null){
+            return;
+        }
+        revoked.put(payload.jti, payload.exp);
+        stringRedisTemplate.execute(
+                REVOKE_SCRIPT,
+                Collections.singletonList(LOGIN_REVOKED_KEY),
+                payload.jti + ":" + payload.exp, String.valueOf(TimeUnit.MINUTES.toMillis(LOGIN_USER_TTL))
+        );
+    }
+
+    private boolean isRevoked(String jti) {
+        return revoked.containsKey(jti);
+    }
+
+    private Payload parse(String token) {
+        int dot = token.indexOf('.');
+        if(dot <= 0){
+            return null;
+        }
+        try {
+            byte[] payload = DECODER.decode(token.substring(0, dot));
+            byte[] signature = DECODER.decode(token.substring(dot + 1));
+            if(!MessageDigest.isEqual(sign(payload), signature)){
+                return null;
+            }
+            return readPayload(payload);
+        } catch (IllegalArgumentException | IOException e) {
+            return null;
+        }
+    }
+
+    private byte[] sign(byte[] payload) {
+        return macs.get().doFinal(payload);
+    }
+
+    private static byte[] writePayload(UserDTO user, long exp, long jti) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(user.getId());
+            out.writeLong(exp);
+            out.writeLong(jti);
+            out.writeUTF(user.getNickName() == null ? "" : user.getNickName());
+            out.writeUTF(user.getIcon() == null ? "" : user.getIcon());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Payload readPayload(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            UserDTO user = new UserDTO();
+            user.setId(in.readLong());
+            long exp = in.readLong();
+            String jti = Long.toHexString(in.readLong());
+            user.setNickName(in.readUTF());
+            user.setIcon(in.readUTF());
+            return new Payload(user, exp, jti);
+        }
+    }
+
+    // 增量同步吊销集合：只读取上次同步位置之后写入的记录，首次同步读取全部
+    private void syncRevoked() {
+        try {
+            // 1、ZRANGEBYSCORE login:revoked (syncedUntil - lookback) +inf WITHSCORES
+            long from = syncedUntil == 0 ? 0 : syncedUntil - SYNC_LOOKBACK_MILLIS;
+            Set<TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                    .rangeByScoreWithScores(LOGIN_REVOKED_KEY, from, Double.POSITIVE_INFINITY);
+            // 2、加入本地集合，已过期的token不需要保留
+            long now = System.currentTimeMillis() / 1000;
+            if(tuples != null){
+                for (TypedTuple<String> tuple : tuples) {
+                    String member = tuple.getValue();
+                    int colon = member == null ? -1 : member.lastIndexOf(':');
+                    if(colon <= 0 || tuple.getScore() == null){
+                        continue;
+                    }
+                    long exp = Long.parseLong(member.substring(colon + 1));
+                    if(exp >= now){
+                        revoked.put(member.substring(0, colon), exp);
+                    }
+                    syncedUntil = Math.max(syncedUntil, tuple.getScore().longValue());
+                }
+            }
+            // 3、定时清理本地已过期的token，不需要访问Redis
+            long nowMillis = System.currentTimeMillis();
+            if(nowMillis - lastPurgeMillis >= PURGE_INTERVAL_MILLIS){
+                lastPurgeMillis = nowMillis;
+                revoked.values().removeIf(exp -> exp < now);
+            }
+        } catch (Exception e) {
+            // Redis不可用时继续使用本地的吊销集合，恢复后从上次同步位置继续
+            log.warn("同步token吊销集合失败", e);
+        }
+    }
+
+    private static class Payload {
+        private final UserDTO user;
+        private final long exp;
+        private final String jti;
+
+        private Payload(UserDTO user, long exp, String jti) {
+            this.user = user;
+            this.exp = exp;
+            this.jti = jti;
+        }
+    }
+}
@@ -11,16 +11,24 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
+import static com.hmdp.utils.RedisConstants.LOCK_RELEASE_CHANNEL;
+
 public class SimpleRedisLock implements ILock{
 
     private String name;
     private StringRedisTemplate stringRedisTemplate;
+    private LockReleaseNotifier releaseNotifier;
 
     public SimpleRedisLock(String name, StringRedisTemplate stringRedisTemplate) {
         this.name = name;
         this.stringRedisTemplate = stringRedisTemplate;
     }
 
+    public SimpleRedisLock(String name, StringRedisTemplate stringRedisTemplate, LockReleaseNotifier releaseNotifier) {
+        this(name, stringRedisTemplate);
+        this.releaseNotifier = releaseNotifier;
+    }
+
     private static final String KEY_PREFIX="lock:";
     private static final String ID_PREFIX= UUID.randomUUID().toString(true)+"-";
     private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
@@ -44,13 +52,22 @@ public class SimpleRedisLock implements ILock{
         return Boolean.TRUE.equals(success);
     }
 
+    @Override
+    public boolean tryLock(long waitMillis, long timeoutSec) {
+        // 没有释放通知时只尝试一次
+        if(releaseNotifier == null){
+            return tryLock(timeoutSec);
+        }
+        return releaseNotifier.await(KEY_PREFIX + name, waitMillis, () -> tryLock(timeoutSec));
+    }
+
     @Override
     public void unlock(){
         // 调用Lua脚本
         stringRedisTemplate.execute(
                 UNLOCK_SCRIPT,
                 Collections.singletonList(KEY_PREFIX + name),
-                ID_PREFIX+Thread.currentThread().getId()
+                ID_PREFIX+Thread.currentThread().getId(), LOCK_RELEASE_CHANNEL
         );
     }
 
@@ -0,0 +1,127 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 短信异步发送队列，请求线程只负责入队，后台线程批量发送，失败时重试
+ * <p>
+ * 入队前先用 tryReserve 预留队列位置，预留成功后 submit 一定能入队；
+ * 预留之后不再发送（例如冷却期内）时调用 release 归还位置。后台线程取出短信后归还位置。
+ * </p>
+ */
+@Slf4j
+@Component
+public class SmsDispatcher {
+
+    // 队列容量，队列满时拒绝发送
+    private static final int QUEUE_CAPACITY = 10000;
+    // 每批最多发送的短信数
+    private static final int BATCH_SIZE = 100;
+    // 整批发送失败后的重试次数
+    private static final int MAX_RETRY = 3;
+
+    private final BlockingQueue<SmsMessage> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    // 队列中剩余的位置，预留和入队分开，避免先检查再入队之间队列被占满
+    private final Semaphore slots = new Semaphore(QUEUE_CAPACITY);
+
+    // 线程池
+    private static final ExecutorService SMS_SEND_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final SmsSender smsSender;
+
+    public SmsDispatcher(SmsSender smsSender) {
+        this.smsSender = smsSender;
+    }
+
+    @PostConstruct
+    private void init(){
+        SMS_SEND_EXECUTOR.submit(this::sendLoop);
+    }
+
+    @PreDestroy
+    private void destroy(){
+        SMS_SEND_EXECUTOR.shutdownNow();
+    }
+
+    /**
+     * 预留一个队列位置，在生成验证码之前调用，避免保存了验证码却无法发送
+     * @return false 代表队列已满
+     */
+    public boolean tryReserve() {
+        return slots.tryAcquire();
+    }
+
+    /**
+     * 归还 tryReserve 预留的位置
+     */
+    public void release() {
+        slots.release();
+    }
+
+    /**
+     * 加入发送队列，立即返回，必须先调用 tryReserve 预留位置
+     * @return false 代表队列已满，预留的位置已归还
+     */
+    public boolean submit(String phone, String code) {
+        if(queue.offer(new SmsMessage(phone, code))){
+            return true;
+        }
+        slots.release();
+        return false;
+    }
+
+    private void sendLoop() {
+        List<SmsMessage> batch = new ArrayList<>(BATCH_SIZE);
+        while(!Thread.currentThread().isInterrupted()){
+            try {
+                // 1、阻塞等待第一条，再取出已排队的其余短信
+                SmsMessage first = queue.poll(1, TimeUnit.SECONDS);
+                if(first == null){
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                slots.release(batch.size());
+                // 2、批量发送
+                sendWithRetry(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void sendWithRetry(List<SmsMessage> batch) throws InterruptedException {
+        for (int i = 1; i <= MAX_RETRY; i++) {
+            try {
+                smsSender.send(batch);
+                return;
+            } catch (Exception e) {
+                log.error("短信发送异常，第{}次，共{}条", i, batch.size(), e);
+                Thread.sleep(100L * i);
+            }
+        }
+        // 整批多次失败，逐条发送，避免一条异常短信拖累其他短信
+        for (SmsMessage message : batch) {
+            try {
+                smsSender.send(Collections.singletonList(message));
+            } catch (Exception e) {
+                log.error("短信发送失败，手机号：{}", message.getPhone(), e);
+            }
+        }
+    }
+}
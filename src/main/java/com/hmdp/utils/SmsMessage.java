@@ -0,0 +1,17 @@
+package com.hmdp.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class SmsMessage {
+    /**
+     * 手机号
+     */
+    private String phone;
+    /**
+     * 验证码
+     */
+    private String code;
+}
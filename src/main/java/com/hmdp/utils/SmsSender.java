@@ -0,0 +1,13 @@
+package com.hmdp.utils;
+
+import java.util.List;
+
+public interface SmsSender {
+
+    /**
+     * 批量发送短信验证码
+     * @param messages 待发送的短信，同一批最多 SmsDispatcher 的批大小条
+     * @throws Exception 发送失败，整批会被重试
+     */
+    void send(List<SmsMessage> messages) throws Exception;
+}
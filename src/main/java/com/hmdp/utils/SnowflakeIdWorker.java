@@ -0,0 +1,223 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+import static com.hmdp.utils.RedisConstants.ID_WORKER_KEY;
+import static com.hmdp.utils.RedisConstants.ID_WORKER_TTL;
+
+/**
+ * 雪花算法id生成器：高32位秒级时间戳 + 10位机器号 + 22位序列号
+ * <p>
+ * 时间戳由 {@link RedisIdWorker} 提供，与 incr/segment 模式的id使用相同的起始时间和位布局（时间戳 << 32），
+ * 不同模式之间切换后新生成的id仍然大于之前的id，按id倒序翻页的游标（如优惠券订单列表）不受影响。
+ * </p>
+ * <p>
+ * 机器号在启动时从Redis租用（SET NX EX），后台定时续期，id完全在内存中生成。
+ * 续期时Redis短暂不可用不影响生成id，但距离最近一次确认租约超过 租期 - LEASE_SAFETY_MILLIS 后，
+ * 或者发现租约已丢失，立即停止生成id，直到重新租到机器号，避免与接手该机器号的实例生成重复的id。
+ * </p>
+ */
+@Slf4j
+public class SnowflakeIdWorker {
+
+    private static final int WORKER_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 22;
+    private static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int WORKER_ID_SHIFT = SEQUENCE_BITS;
+    // 与 RedisIdWorker 的 COUNT_BIT 相同
+    private static final int TIMESTAMP_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS;
+
+    // 时钟回拨不超过该值时等待时钟追上，否则拒绝生成id
+    private static final long MAX_BACKWARD_MILLIS = 5;
+
+    // 租约到期前预留的安全时间，覆盖各实例之间的时钟误差和Redis过期的延迟
+    private static final long LEASE_SAFETY_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+    static {
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("worker_renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    // 秒级时间戳，与 RedisIdWorker 的时间戳相同
+    private final LongSupplier timestampSupplier;
+    // 实例标示，写入租约，续期时比对
+    private final String instanceId = UUID.randomUUID().toString(true);
+    private final ScheduledExecutorService renewExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    private volatile long workerId;
+    // 租约的有效期，在此之后不再生成id；按续期请求发出前的时间计算，租约丢失时置为0
+    private volatile long leaseValidUntilMillis;
+
+    // 上一次生成id的毫秒时间，用于发现时钟回拨
+    private long lastMillis = -1L;
+    // 上一次生成id的秒级时间戳
+    private long lastTimestamp = -1L;
+    private long sequence = 0L;
+
+    public SnowflakeIdWorker(StringRedisTemplate stringRedisTemplate, LongSupplier timestampSupplier) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.timestampSupplier = timestampSupplier;
+        // 1、启动时必须租到机器号
+        long leaseStart = System.currentTimeMillis();
+        Long leased = lease(-1);
+        if(leased == null){
+            throw new IllegalStateException("没有可用的机器号，最多支持" + (MAX_WORKER_ID + 1) + "个实例");
+        }
+        this.workerId = leased;
+        this.leaseValidUntilMillis = validUntil(leaseStart);
+        log.info("雪花算法租用机器号：{}", workerId);
+        // 2、每三分之一个租期续期一次
+        long period = ID_WORKER_TTL / 3;
+        renewExecutor.scheduleWithFixedDelay(this::renew, period, period, TimeUnit.SECONDS);
+    }
+
+    public synchronized long nextId() {
+        long nowMillis = System.currentTimeMillis();
+        // 1、租约未确认，机器号可能已被其他实例使用
+        if(nowMillis >= leaseValidUntilMillis){
+            throw new IllegalStateException("机器号" + workerId + "租约未确认，暂停生成id");
+        }
+        // 2、时钟回拨
+        if(nowMillis < lastMillis){
+            long backward = lastMillis - nowMillis;
+            if(backward > MAX_BACKWARD_MILLIS){
+                throw new IllegalStateException("时钟回拨" + backward + "毫秒，拒绝生成id");
+            }
+            nowMillis = waitUntil(lastMillis);
+        }
+        lastMillis = nowMillis;
+        // 3、同一秒内序列号自增，用完后等待下一秒；本地时区偏移回退时沿用上一秒，保证id递增
+        long timestamp = Math.max(timestampSupplier.getAsLong(), lastTimestamp);
+        if(timestamp == lastTimestamp){
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if(sequence == 0){
+                timestamp = waitForNextSecond(lastTimestamp);
+            }
+        }else{
+            sequence = 0L;
+        }
+        lastTimestamp = timestamp;
+
+        // 4、拼接并返回
+        return timestamp << TIMESTAMP_SHIFT
+                | workerId << WORKER_ID_SHIFT
+                | sequence;
+    }
+
+    // 批量生成，整批只加一次锁
+    public synchronized void nextIds(long[] ids) {
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = nextId();
+        }
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    public void shutdown() {
+        renewExecutor.shutdownNow();
+        // 租约缩短为1秒，其他实例很快可以复用机器号
+        try {
+            stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(ID_WORKER_KEY + workerId),
+                    instanceId, "1");
+        } catch (Exception e) {
+            log.warn("释放机器号租约失败：{}", workerId, e);
+        }
+    }
+
+    private long waitForNextSecond(long last) {
+        long timestamp = timestampSupplier.getAsLong();
+        while(timestamp <= last){
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            timestamp = timestampSupplier.getAsLong();
+        }
+        return timestamp;
+    }
+
+    private long waitUntil(long target) {
+        long timestamp = System.currentTimeMillis();
+        while(timestamp < target){
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            timestamp = System.currentTimeMillis();
+        }
+        return timestamp;
+    }
+
+    private void renew() {
+        long renewStart = System.currentTimeMillis();
+        try {
+            Long r = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(ID_WORKER_KEY + workerId),
+                    instanceId, String.valueOf(ID_WORKER_TTL));
+            if(r != null && r == 1){
+                leaseValidUntilMillis = validUntil(renewStart);
+                return;
+            }
+            // 租约已过期或被其他实例占用，立即停止生成id，再重新租用（优先原机器号）
+            leaseValidUntilMillis = 0;
+            Long leased = lease(workerId);
+            if(leased == null){
+                log.error("机器号{}租约丢失，且没有可用的机器号，暂停生成id", workerId);
+                return;
+            }
+            if(leased != workerId){
+                log.warn("机器号{}租约丢失，改用机器号{}", workerId, leased);
+            }
+            // 与 nextId 互斥，保证切换机器号和恢复租约同时生效
+            synchronized (this) {
+                workerId = leased;
+                leaseValidUntilMillis = validUntil(renewStart);
+            }
+        } catch (Exception e) {
+            // Redis不可用时在租约有效期内继续使用当前机器号生成id
+            if(System.currentTimeMillis() >= leaseValidUntilMillis){
+                log.error("机器号{}租约未确认，暂停生成id，Redis恢复后重新租用", workerId, e);
+            }else{
+                log.warn("机器号{}续期失败", workerId, e);
+            }
+        }
+    }
+
+    // 从发出租用或续期请求时开始计算，租期减去安全时间
+    private static long validUntil(long requestMillis) {
+        return requestMillis + TimeUnit.SECONDS.toMillis(ID_WORKER_TTL) - LEASE_SAFETY_MILLIS;
+    }
+
+    // 租用一个空闲机器号，preferred >= 0 时优先尝试该机器号，没有空闲机器号时返回null
+    private Long lease(long preferred) {
+        if(preferred >= 0 && tryLease(preferred)){
+            return preferred;
+        }
+        // 随机起点，减少多个实例同时启动时的冲突
+        long start = ThreadLocalRandom.current().nextLong(MAX_WORKER_ID + 1);
+        for (long i = 0; i <= MAX_WORKER_ID; i++) {
+            long id = (start + i) & MAX_WORKER_ID;
+            if(tryLease(id)){
+                return id;
+            }
+        }
+        return null;
+    }
+
+    private boolean tryLease(long id) {
+        Boolean success = stringRedisTemplate.opsForValue()
+                .setIfAbsent(ID_WORKER_KEY + id, instanceId, ID_WORKER_TTL, TimeUnit.SECONDS);
+        return Boolean.TRUE.equals(success);
+    }
+}
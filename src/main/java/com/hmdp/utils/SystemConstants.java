@@ -5,4 +5,11 @@ public class SystemConstants {
     public static final String USER_NICK_NAME_PREFIX = "user_";
     public static final int DEFAULT_PAGE_SIZE = 5;
     public static final int MAX_PAGE_SIZE = 10;
+    public static final int VOUCHER_ORDER_SHARD_COUNT = 4;
+    public static final int MAX_SCROLL_PAGE_SIZE = 50;
+    public static final long BLOG_HOT_HALF_LIFE_HOURS = 24;
+    public static final int BLOG_HOT_LIKE_WEIGHT = 1;
+    public static final int BLOG_HOT_COMMENT_WEIGHT = 2;
+    public static final int BLOG_HOT_MAX_SIZE = 1000;
+    public static final int BLOG_HOT_SNAPSHOT_SIZE = 100;
 }
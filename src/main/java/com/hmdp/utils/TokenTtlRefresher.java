@@ -0,0 +1,135 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
+
+/**
+ * 登录token有效期的滑动刷新
+ * <p>
+ * 本地记录每个token上次刷新有效期的时间，只有估算的剩余有效期低于阈值时才需要刷新，
+ * 需要刷新的token先放入待刷新集合，每秒通过管道批量执行一次EXPIRE，不在请求线程中访问Redis。
+ * </p>
+ */
+@Slf4j
+@Component
+public class TokenTtlRefresher {
+
+    private static final long TTL_MILLIS = TimeUnit.MINUTES.toMillis(LOGIN_USER_TTL);
+    // 剩余有效期低于90%时刷新，即距离上次刷新超过有效期的10%
+    private static final long REFRESH_AFTER_MILLIS = TTL_MILLIS / 10;
+    // 批量刷新的间隔
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+    // 最多记录的token数量，被淘汰的token下次请求时重新刷新一次
+    private static final int MAX_TRACKED = 200000;
+
+    // token -> 上次刷新有效期的时间
+    private final Map<String, Long> refreshedAt = new ConcurrentHashMap<>();
+    // 待刷新的token
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public TokenTtlRefresher(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @PostConstruct
+    private void init(){
+        flushExecutor.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy(){
+        flushExecutor.shutdown();
+        // 退出前刷新剩余的token
+        flush();
+    }
+
+    /**
+     * 请求使用了该token，需要时加入待刷新集合
+     */
+    public void touch(String token) {
+        long now = System.currentTimeMillis();
+        Long last = refreshedAt.get(token);
+        if(last != null && now - last < REFRESH_AFTER_MILLIS){
+            return;
+        }
+        if(refreshedAt.size() >= MAX_TRACKED){
+            evict(now);
+        }
+        refreshedAt.put(token, now);
+        pending.add(token);
+    }
+
+    /**
+     * 刚刚设置过有效期的token（如登录），不需要再刷新
+     */
+    public void markRefreshed(String token) {
+        refreshedAt.put(token, System.currentTimeMillis());
+    }
+
+    /**
+     * 不再跟踪该token（如登出）
+     */
+    public void forget(String token) {
+        refreshedAt.remove(token);
+        pending.remove(token);
+    }
+
+    private void flush() {
+        if(pending.isEmpty()){
+            return;
+        }
+        // 1、取出待刷新的token
+        List<String> tokens = new ArrayList<>(pending.size());
+        Iterator<String> it = pending.iterator();
+        while(it.hasNext()){
+            tokens.add(it.next());
+            it.remove();
+        }
+        // 2、管道批量刷新有效期
+        try {
+            long ttlSeconds = TimeUnit.MILLISECONDS.toSeconds(TTL_MILLIS);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (String token : tokens) {
+                    conn.expire(LOGIN_USER_KEY + token, ttlSeconds);
+                }
+                return null;
+            });
+        } catch (DataAccessException e) {
+            // 放回待刷新集合，下次重试
+            log.warn("批量刷新token有效期失败，共{}个", tokens.size(), e);
+            pending.addAll(tokens);
+        }
+    }
+
+    // 删除已超过刷新间隔的记录，它们下次出现时本来就需要刷新
+    private void evict(long now) {
+        refreshedAt.values().removeIf(last -> now - last >= REFRESH_AFTER_MILLIS);
+        if(refreshedAt.size() >= MAX_TRACKED){
+            refreshedAt.clear();
+        }
+    }
+}
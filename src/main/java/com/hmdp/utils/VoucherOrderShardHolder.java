@@ -0,0 +1,52 @@
+package com.hmdp.utils;
+
+import java.util.function.Supplier;
+
+import static com.hmdp.utils.SystemConstants.VOUCHER_ORDER_SHARD_COUNT;
+
+/**
+ * tb_voucher_order 分表路由，按 user_id % VOUCHER_ORDER_SHARD_COUNT 选择 tb_voucher_order_{n}
+ * <p>
+ * 访问 VoucherOrderMapper 前必须通过 {@link #routeByUser} 或 {@link #routeToShard} 指定分表，
+ * 由 MybatisConfig 中的动态表名拦截器读取。
+ * </p>
+ */
+public class VoucherOrderShardHolder {
+    private static final ThreadLocal<Integer> tl = new ThreadLocal<>();
+
+    public static int shardOf(Long userId){
+        return (int) Math.floorMod(userId, (long) VOUCHER_ORDER_SHARD_COUNT);
+    }
+
+    /**
+     * 在用户所在的分表上执行
+     */
+    public static <T> T routeByUser(Long userId, Supplier<T> action){
+        return routeToShard(shardOf(userId), action);
+    }
+
+    /**
+     * 在指定分表上执行
+     */
+    public static <T> T routeToShard(int shard, Supplier<T> action){
+        Integer previous = tl.get();
+        tl.set(shard);
+        try {
+            return action.get();
+        } finally {
+            if(previous == null){
+                tl.remove();
+            }else{
+                tl.set(previous);
+            }
+        }
+    }
+
+    public static String tableName(String tableName){
+        Integer shard = tl.get();
+        if(shard == null){
+            throw new IllegalStateException("未指定 " + tableName + " 的分表路由");
+        }
+        return tableName + "_" + shard;
+    }
+}
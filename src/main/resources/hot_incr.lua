@@ -0,0 +1,20 @@
+-- 1、参数列表
+-- 1.1、热度排行key blog:hot
+local hotKey = KEYS[1]
+-- 1.2、热度基准时间key blog:hot:epoch
+local epochKey = KEYS[2]
+-- 1.3、笔记id
+local blogId = ARGV[1]
+-- 1.4、事件时间
+local now = tonumber(ARGV[2])
+-- 1.5、热度半衰期（毫秒）
+local halfLife = tonumber(ARGV[3])
+-- 1.6、热度权重
+local weight = tonumber(ARGV[4])
+
+-- 2、热度基准时间，不存在时以当前时间为准
+redis.call('set', epochKey, now, 'NX')
+local epoch = tonumber(redis.call('get', epochKey))
+-- 3、增加热度
+redis.call('zincrby', hotKey, weight * 2 ^ ((now - epoch) / halfLife), blogId)
+return 1
@@ -0,0 +1,26 @@
+-- 1、参数列表
+-- 1.1、热度排行key blog:hot
+local hotKey = KEYS[1]
+-- 1.2、热度基准时间key blog:hot:epoch
+local epochKey = KEYS[2]
+-- 1.3、当前时间
+local now = tonumber(ARGV[1])
+-- 1.4、热度半衰期（毫秒）
+local halfLife = tonumber(ARGV[2])
+-- 1.5、排行保留的笔记数
+local maxSize = tonumber(ARGV[3])
+
+-- 2、基准时间不存在，以当前时间为准
+local epoch = tonumber(redis.call('get', epochKey))
+if(not epoch) then
+    redis.call('set', epochKey, now)
+    return 0
+end
+-- 3、所有热度按经过的时间衰减，基准时间移到当前时间，避免热度数值无限增长
+if(redis.call('exists', hotKey) == 1) then
+    redis.call('zunionstore', hotKey, 1, hotKey, 'WEIGHTS', 2 ^ ((epoch - now) / halfLife))
+    -- 3.1、只保留热度最高的 maxSize 篇
+    redis.call('zremrangebyrank', hotKey, 0, -(maxSize + 1))
+end
+redis.call('set', epochKey, now)
+return 1
@@ -0,0 +1,18 @@
+-- 1、参数列表
+-- 1.1、点赞数key blog:like:count，field为blogId
+local countKey = KEYS[1]
+-- 1.2、待写回数据库的笔记key blog:like:dirty
+local dirtyKey = KEYS[2]
+-- 1.3、ARGV依次为 blogId1, 写回的点赞数1, blogId2, 写回的点赞数2 ...，点赞数为空字符串代表Redis中没有点赞数
+
+-- 2、只移除写回后点赞数没有再变化的笔记，写回期间有新的点赞则留在集合中，下次再写回
+local removed = 0
+for i = 1, #ARGV, 2 do
+    local blogId = ARGV[i]
+    local count = redis.call('hget', countKey, blogId)
+    if((count or '') == ARGV[i + 1]) then
+        removed = removed + redis.call('srem', dirtyKey, blogId)
+    end
+end
+-- 3、返回移除的数量
+return removed
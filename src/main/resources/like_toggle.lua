@@ -0,0 +1,62 @@
+-- 1、参数列表
+-- 1.1、点赞用户key blog:liked:{blogId}
+local likedKey = KEYS[1]
+-- 1.2、点赞数key blog:like:count，field为blogId
+local countKey = KEYS[2]
+-- 1.3、待写回数据库的笔记key blog:like:dirty
+local dirtyKey = KEYS[3]
+-- 1.4、热度排行key blog:hot
+local hotKey = KEYS[4]
+-- 1.5、热度基准时间key blog:hot:epoch
+local epochKey = KEYS[5]
+-- 1.6、用户id
+local userId = ARGV[1]
+-- 1.7、笔记id
+local blogId = ARGV[2]
+-- 1.8、点赞时间
+local now = tonumber(ARGV[3])
+-- 1.9、热度半衰期（毫秒）
+local halfLife = tonumber(ARGV[4])
+-- 1.10、每个点赞的热度权重
+local weight = tonumber(ARGV[5])
+-- 1.11、数据库中的点赞数 tb_blog.liked，Redis中没有点赞数时用于初始化，为空字符串代表调用方还没有查询
+local seed = ARGV[6]
+
+-- 2、Redis中没有该笔记的点赞数（首次点赞或被淘汰），先从数据库初始化，不能用点赞用户数覆盖
+if(redis.call('hexists', countKey, blogId) == 0) then
+    if(seed == nil or seed == '') then
+        -- 2.1、返回-1，由调用方查询数据库后带上点赞数重新执行
+        return -1
+    end
+    redis.call('hset', countKey, blogId, seed)
+end
+
+-- 3、热度基准时间，不存在时以当前时间为准
+redis.call('set', epochKey, now, 'NX')
+local epoch = tonumber(redis.call('get', epochKey))
+
+-- 4、已点赞则取消，否则点赞
+local liked = 0
+local likedAt = redis.call('zscore', likedKey, userId)
+if(likedAt) then
+    redis.call('zrem', likedKey, userId)
+    -- 4.1、减去当初点赞时增加的热度，热度衰减到接近0的移出排行
+    local hot = redis.call('zincrby', hotKey, -weight * 2 ^ ((tonumber(likedAt) - epoch) / halfLife), blogId)
+    if(tonumber(hot) < 0.000001) then
+        redis.call('zrem', hotKey, blogId)
+    end
+else
+    redis.call('zadd', likedKey, now, userId)
+    -- 4.2、增加热度，越晚的点赞热度越高，相当于之前的热度随时间衰减
+    redis.call('zincrby', hotKey, weight * 2 ^ ((now - epoch) / halfLife), blogId)
+    liked = 1
+end
+-- 5、在已有点赞数上增减，不小于0，标记为待写回
+if(liked == 1) then
+    redis.call('hincrby', countKey, blogId, 1)
+elseif(tonumber(redis.call('hincrby', countKey, blogId, -1)) < 0) then
+    redis.call('hset', countKey, blogId, 0)
+end
+redis.call('sadd', dirtyKey, blogId)
+-- 6、返回1代表点赞，0代表取消点赞
+return liked
@@ -0,0 +1,47 @@
+-- 脚本中读取服务器时间，需要按命令而不是按脚本复制（Redis 5 之前）
+redis.replicate_commands()
+
+-- 参数列表
+-- 1.1、令牌桶key
+local key = KEYS[1]
+-- 1.2、桶容量
+local capacity = tonumber(ARGV[1])
+-- 1.3、每秒生成的令牌数
+local rate = tonumber(ARGV[2])
+-- 1.4、本次需要的令牌数
+local requested = tonumber(ARGV[3])
+-- 1.5、当前时间（毫秒），使用Redis服务器的时间，避免各应用节点时钟不一致导致令牌补充错误
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+-- 2、读取桶中剩余令牌和上次补充时间 hmget key tokens ts
+local bucket = redis.call('hmget', key, 'tokens', 'ts')
+local tokens = tonumber(bucket[1])
+local ts = tonumber(bucket[2])
+if (tokens == nil or ts == nil) then
+    -- 2.1、桶不存在，初始化为满桶
+    tokens = capacity
+    ts = now
+end
+
+-- 3、按流逝的时间补充令牌
+if (now > ts) then
+    tokens = math.min(capacity, tokens + (now - ts) * rate / 1000)
+    ts = now
+end
+
+-- 4、判断令牌是否充足
+local wait = 0
+if (tokens >= requested) then
+    -- 4.1、充足，扣减令牌
+    tokens = tokens - requested
+else
+    -- 4.2、不足，计算还需等待多少毫秒
+    wait = math.ceil((requested - tokens) * 1000 / rate)
+end
+
+-- 5、写回令牌桶，并在桶被填满后自动过期
+redis.call('hmset', key, 'tokens', tokens, 'ts', ts)
+redis.call('pexpire', key, math.ceil(capacity * 1000 / rate) + 1000)
+-- 6、返回需要等待的毫秒数，0代表放行
+return wait
@@ -0,0 +1,16 @@
+-- 锁的key
+local key = KEYS[1]
+-- 线程标示
+local threadId = ARGV[1]
+-- 锁的超时时间（秒）
+local timeoutSec = ARGV[2]
+
+-- 锁不存在，或者锁被当前线程持有
+if(redis.call('exists', key) == 0 or redis.call('hexists', key, threadId) == 1) then
+    -- 重入次数 +1，并重置有效期
+    local count = redis.call('hincrby', key, threadId, 1)
+    redis.call('expire', key, timeoutSec)
+    return count
+end
+-- 锁被其他线程持有
+return 0
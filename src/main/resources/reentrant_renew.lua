@@ -0,0 +1,5 @@
+-- 锁仍被当前线程持有时续期
+if(redis.call('hexists', KEYS[1], ARGV[1]) == 1) then
+    return redis.call('expire', KEYS[1], ARGV[2])
+end
+return 0
@@ -0,0 +1,24 @@
+-- 锁的key
+local key = KEYS[1]
+-- 线程标示
+local threadId = ARGV[1]
+-- 锁的超时时间（秒）
+local timeoutSec = ARGV[2]
+-- 锁释放通知频道
+local channel = ARGV[3]
+
+-- 判断锁是否还被当前线程持有
+if(redis.call('hexists', key, threadId) == 0) then
+    return -1
+end
+-- 重入次数 -1
+local count = redis.call('hincrby', key, threadId, -1)
+if(count > 0) then
+    -- 仍然持有，重置有效期
+    redis.call('expire', key, timeoutSec)
+    return 0
+end
+-- 重入次数为0，释放锁，并通知等待的线程
+redis.call('del', key)
+redis.call('publish', channel, key)
+return 1
@@ -1,10 +1,12 @@
 -- 参数列表
 -- 1.1、优惠卷id
-local voucherId =AVGE[1]
+local voucherId = ARGV[1]
 -- 1.2、用户id
-local userId = AVGE[2]
+local userId = ARGV[2]
 -- 1.3、订单id
-local orderId=AVGE[3]
+local orderId = ARGV[3]
+-- 1.4、是否写入Redis Stream，'1'代表写入
+local useStream = ARGV[4]
 
 -- 2、数据key
 -- 2.1、库存key
@@ -29,5 +31,7 @@ redis.call('incrby',stockKey,-1)
 -- 3.5、下单（保存用户）sadd orderKey userId
 redis.call('sadd',orderKey,userId)
 -- 3.6、发送消息到队列中，XADD stream.order * k1 v1 k2 v2 ...
-redis.call('xadd','stream.orders','*','userId',userId,'voucherId',voucherId,'id',orderId)
-return 0
\ No newline at end of file
+if(useStream == '1')then
+    redis.call('xadd','stream.orders','*','userId',userId,'voucherId',voucherId,'id',orderId)
+end
+return 0
@@ -0,0 +1,32 @@
+-- 1、参数列表
+-- 1.1、验证码key login:code:{phone}
+local codeKey = KEYS[1]
+-- 1.2、发送冷却key sms:cooldown:{phone}
+local cooldownKey = KEYS[2]
+-- 1.3、当日发送次数key sms:daily:{phone}:{yyyyMMdd}
+local dailyKey = KEYS[3]
+-- 1.4、验证码
+local code = ARGV[1]
+-- 1.5、验证码有效期（秒）
+local codeTtl = ARGV[2]
+-- 1.6、冷却时间（秒）
+local cooldown = ARGV[3]
+-- 1.7、每日上限
+local dailyMax = tonumber(ARGV[4])
+
+-- 2、冷却期内，返回1
+if(redis.call('exists', cooldownKey) == 1) then
+    return 1
+end
+-- 3、超过每日上限，返回2
+local count = tonumber(redis.call('get', dailyKey) or '0')
+if(count >= dailyMax) then
+    return 2
+end
+-- 4、保存验证码，开始冷却，当日次数 +1
+redis.call('set', codeKey, code, 'EX', codeTtl)
+redis.call('set', cooldownKey, '1', 'EX', cooldown)
+if(redis.call('incr', dailyKey) == 1) then
+    redis.call('expire', dailyKey, 86400)
+end
+return 0
@@ -0,0 +1,20 @@
+-- 1、参数列表
+-- 1.1、验证码key login:code:{phone}
+local codeKey = KEYS[1]
+-- 1.2、发送冷却key sms:cooldown:{phone}
+local cooldownKey = KEYS[2]
+-- 1.3、当日发送次数key sms:daily:{phone}:{yyyyMMdd}
+local dailyKey = KEYS[3]
+-- 1.4、未发送的验证码
+local code = ARGV[1]
+
+-- 2、验证码已被其他请求覆盖，不撤销，返回0
+if(redis.call('get', codeKey) ~= code) then
+    return 0
+end
+-- 3、删除验证码和冷却时间，当日次数 -1
+redis.call('del', codeKey, cooldownKey)
+if(tonumber(redis.call('get', dailyKey) or '0') > 0) then
+    redis.call('decr', dailyKey)
+end
+return 1
@@ -0,0 +1,19 @@
+-- 脚本中读取服务器时间，需要按命令而不是按脚本复制（Redis 5 之前）
+redis.replicate_commands()
+
+-- 参数列表
+-- 1.1、吊销集合key
+local key = KEYS[1]
+-- 1.2、吊销记录 jti:过期时间（秒）
+local member = ARGV[1]
+-- 1.3、吊销记录保留的时长（毫秒），不短于token的有效期
+local retain = tonumber(ARGV[2])
+
+-- 2、以Redis服务器的写入时间（毫秒）作为分数，各节点按分数增量同步
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+redis.call('zadd', key, now, member)
+
+-- 3、清理写入时间超过保留时长的记录，其中的token一定已经过期
+redis.call('zremrangebyscore', key, 0, now - retain)
+return 0
@@ -1,6 +1,7 @@
 -- 比较线程标示与锁中的标示是否一致
-if(redis.call('get',KEY[1]) == ARGV[1]) then
-    -- 释放锁 del key
-   return redis.call('del',KEY[1])
+if(redis.call('get',KEYS[1]) == ARGV[1]) then
+    -- 释放锁 del key，并通知等待的线程
+   redis.call('publish',ARGV[2],KEYS[1])
+   return redis.call('del',KEYS[1])
 end
-return 0
\ No newline at end of file
+return 0
@@ -0,0 +1,6 @@
+-- 比较实例标示与租约中的标示是否一致
+if(redis.call('get',KEYS[1]) == ARGV[1]) then
+    -- 续期 expire key ttl
+    return redis.call('expire',KEYS[1],ARGV[2])
+end
+return 0
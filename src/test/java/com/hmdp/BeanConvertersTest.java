@@ -0,0 +1,117 @@
+package com.hmdp;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.User;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.utils.BeanConverters;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 手写转换与 BeanUtil 反射转换的结果对比和耗时对比，不需要启动Spring容器
+ * <p>
+ * 耗时对比默认不执行，需要时运行 mvn test -Dtest=BeanConvertersTest -Dbenchmark=true
+ * </p>
+ */
+@Slf4j
+class BeanConvertersTest {
+
+    private static final int WARMUP = 200000;
+    private static final int ROUNDS = 1000000;
+
+    @Test
+    void testSameResultAsBeanUtil() {
+        User user = newUser();
+        Assertions.assertEquals(BeanUtil.copyProperties(user, UserDTO.class), BeanConverters.toUserDTO(user));
+
+        Map<Object, Object> userMap = newUserMap();
+        Assertions.assertEquals(BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false), BeanConverters.toUserDTO(userMap));
+
+        UserDTO userDTO = BeanConverters.toUserDTO(user);
+        Assertions.assertEquals(beanToMap(userDTO), BeanConverters.toMap(userDTO));
+        // null值不写入Hash
+        userDTO.setIcon(null);
+        Assertions.assertFalse(BeanConverters.toMap(userDTO).containsKey("icon"));
+
+        Map<Object, Object> orderMap = newOrderMap();
+        Assertions.assertEquals(BeanUtil.fillBeanWithMap(orderMap, new VoucherOrder(), true), BeanConverters.toVoucherOrder(orderMap));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmark() {
+        User user = newUser();
+        Map<Object, Object> userMap = newUserMap();
+        Map<Object, Object> orderMap = newOrderMap();
+        UserDTO userDTO = BeanConverters.toUserDTO(user);
+
+        bench("User -> UserDTO", () -> BeanUtil.copyProperties(user, UserDTO.class), () -> BeanConverters.toUserDTO(user));
+        bench("Map -> UserDTO", () -> BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false), () -> BeanConverters.toUserDTO(userMap));
+        bench("UserDTO -> Map", () -> beanToMap(userDTO), () -> BeanConverters.toMap(userDTO));
+        bench("Map -> VoucherOrder", () -> BeanUtil.fillBeanWithMap(orderMap, new VoucherOrder(), true), () -> BeanConverters.toVoucherOrder(orderMap));
+    }
+
+    private void bench(String name, Supplier<Object> reflect, Supplier<Object> direct) {
+        long reflectNanos = measure(reflect);
+        long directNanos = measure(direct);
+        log.info("{} BeanUtil: {} ns/op, BeanConverters: {} ns/op",
+                name, reflectNanos / ROUNDS, directNanos / ROUNDS);
+    }
+
+    private long measure(Supplier<Object> task) {
+        int sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += task.get().hashCode();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            sink += task.get().hashCode();
+        }
+        long nanos = System.nanoTime() - start;
+        // 防止被JIT优化掉
+        if(sink == 42){
+            log.trace("sink: {}", sink);
+        }
+        return nanos;
+    }
+
+    private static Map<String, Object> beanToMap(UserDTO userDTO) {
+        return BeanUtil.beanToMap(userDTO, new HashMap<>(),
+                CopyOptions.create()
+                        .setIgnoreNullValue(true)
+                        .setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString()));
+    }
+
+    private static User newUser() {
+        User user = new User();
+        user.setId(1010L);
+        user.setPhone("13686869696");
+        user.setNickName("小鱼同学");
+        user.setIcon("/imgs/icons/user1.jpg");
+        return user;
+    }
+
+    private static Map<Object, Object> newUserMap() {
+        Map<Object, Object> userMap = new HashMap<>();
+        userMap.put("id", "1010");
+        userMap.put("nickName", "小鱼同学");
+        userMap.put("icon", "/imgs/icons/user1.jpg");
+        return userMap;
+    }
+
+    private static Map<Object, Object> newOrderMap() {
+        Map<Object, Object> orderMap = new HashMap<>();
+        orderMap.put("id", "273468413624565761");
+        orderMap.put("userId", "1010");
+        orderMap.put("voucherId", "10");
+        return orderMap;
+    }
+}
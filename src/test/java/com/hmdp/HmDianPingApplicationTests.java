@@ -4,6 +4,7 @@ import com.hmdp.entity.Shop;
 import com.hmdp.service.impl.ShopServiceImpl;
 import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RedisIdWorker;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.geo.Point;
@@ -13,8 +14,11 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 import javax.annotation.Resource;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -64,6 +68,45 @@ class HmDianPingApplicationTests {
     }
 
 
+    @Test
+    void testSegmentIdWorker() throws InterruptedException {
+        RedisIdWorker segmentIdWorker = new RedisIdWorker(stringRedisTemplate, "segment");
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch latch=new CountDownLatch(300);
+
+        Runnable task=()->{
+            for(int i=0;i<100;i++) {
+                ids.add(segmentIdWorker.nextId("order"));
+            }
+            latch.countDown();
+        };
+
+        long start=System.currentTimeMillis();
+        for(int i=0;i<300;i++){
+            es.submit(task);
+        }
+        latch.await();
+        long end=System.currentTimeMillis();
+        System.out.println("time="+(end-start));
+        // 号段模式生成的id不能重复
+        Assertions.assertEquals(30000, ids.size());
+    }
+
+    @Test
+    void testNextIds(){
+        long start=System.currentTimeMillis();
+        long[] ids = redisIdWorker.nextIds("order", 10000);
+        long end=System.currentTimeMillis();
+        System.out.println("time="+(end-start));
+        // 批量生成的id不能重复，也不能与单个生成的id重复
+        Set<Long> set = new HashSet<>();
+        for (long id : ids) {
+            set.add(id);
+        }
+        set.add(redisIdWorker.nextId("order"));
+        Assertions.assertEquals(10001, set.size());
+    }
+
     @Test
     void testSaveShop(){
         Shop shop = shopService.getById(1L);